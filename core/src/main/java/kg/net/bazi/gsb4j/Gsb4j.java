@@ -26,17 +26,21 @@ import com.google.inject.name.Names;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import javax.sql.DataSource;
 
 import kg.net.bazi.gsb4j.api.SafeBrowsingApi;
 import kg.net.bazi.gsb4j.api.SafeBrowsingApiModule;
+import kg.net.bazi.gsb4j.api.SnapshotManager;
 import kg.net.bazi.gsb4j.db.LocalDatabaseModule;
+import kg.net.bazi.gsb4j.db.ReadOnly;
 import kg.net.bazi.gsb4j.properties.Gsb4jClientInfoProvider;
 import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
 import kg.net.bazi.gsb4j.properties.Gsb4jPropertiesModule;
@@ -153,6 +157,32 @@ public class Gsb4j {
         return injector.getInstance(key);
     }
 
+    /**
+     * Exports verified threat lists of Update API to a snapshot file. Other instances may import the snapshot to start
+     * serving lookups without waiting for full updates.
+     *
+     * @param path path of the snapshot file
+     * @return number of exported threat lists
+     * @throws IOException when snapshot cannot be written
+     * @see SnapshotManager
+     */
+    public int exportSnapshot(Path path) throws IOException {
+        return injector.getInstance(SnapshotManager.class).exportSnapshot(path);
+    }
+
+    /**
+     * Imports threat lists of Update API from a snapshot file. This should be done right after bootstrap, before the
+     * first update is made.
+     *
+     * @param path path of the snapshot file
+     * @return number of imported threat lists
+     * @throws IOException when snapshot cannot be read or it is not valid
+     * @see SnapshotManager
+     */
+    public int importSnapshot(Path path) throws IOException {
+        return injector.getInstance(SnapshotManager.class).importSnapshot(path);
+    }
+
     /**
      * Shuts down Gsb4j. This method releases all resources related to Gsb4j.
      */
@@ -161,6 +191,8 @@ public class Gsb4j {
         Key<ScheduledExecutorService> scedulerKey = Key.get(ScheduledExecutorService.class, Gsb4jBinding.class);
         ScheduledExecutorService scheduler = injector.getInstance(scedulerKey);
         scheduler.shutdown();
+        Key<ExecutorService> updateExecutorKey = Key.get(ExecutorService.class, Gsb4jBinding.class);
+        injector.getInstance(updateExecutorKey).shutdown();
 
         // cleanup HTTP client resources
         Key<CloseableHttpClient> httpClientKey = Key.get(CloseableHttpClient.class, Gsb4jBinding.class);
@@ -168,10 +200,15 @@ public class Gsb4j {
         close(httpClient, "HTTP client");
 
         // close db connections
+        Key<DataSource> readDataSourceKey = Key.get(DataSource.class, ReadOnly.class);
+        DataSource readDataSource = injector.getInstance(readDataSourceKey);
+        if (readDataSource instanceof Closeable) {
+            close((Closeable) readDataSource, "DB reader pool");
+        }
         Key<DataSource> dataSourceKey = Key.get(DataSource.class, Gsb4jBinding.class);
         DataSource dataSource = injector.getInstance(dataSourceKey);
         if (dataSource instanceof Closeable) {
-            close((Closeable) dataSource, "DB pool");
+            close((Closeable) dataSource, "DB writer pool");
         }
     }
 
@@ -23,10 +23,16 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
@@ -72,4 +78,26 @@ public class Gsb4jModule extends AbstractModule {
         return Executors.newScheduledThreadPool(4, tf);
     }
 
+    @Provides
+    @Gsb4jBinding
+    @Singleton
+    ExecutorService makeUpdateExecutor(Gsb4jProperties properties) {
+        Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        ThreadFactory tf = new BasicThreadFactory.Builder()
+            .namingPattern("gsb4j-update-%d")
+            .uncaughtExceptionHandler((thread, ex) -> logger.error("Thread {} failed", thread.getName(), ex))
+            .build();
+        // no queue: when all workers are busy, list updates are applied by the thread that reads the response which
+        // keeps the number of decoded lists held in memory bounded by the number of workers
+        int workers = properties.getUpdateWorkers();
+        return new ThreadPoolExecutor(workers, workers, 1, TimeUnit.MINUTES, new SynchronousQueue<>(), tf,
+            (task, executor) -> {
+                // unlike CallerRunsPolicy, do not silently discard tasks after shutdown: callers wait for them
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Update executor is shut down");
+                }
+                task.run();
+            });
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import kg.net.bazi.gsb4j.db.PrefixCursor;
+import kg.net.bazi.gsb4j.util.HashPrefixes;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * SHA-256 digest and prefix length histogram of a threat list computed while its hash prefixes are streamed in
+ * lexicographic order. Hash prefixes are copied to a buffer which is digested in large contiguous chunks rather
+ * than prefix by prefix.
+ *
+ * @author azilet
+ */
+final class ListDigest {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PREFIX_SIZE = 32;
+
+    private final MessageDigest sha256 = DigestUtils.getSha256Digest();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final int[] lengths = new int[MAX_PREFIX_SIZE + 1];
+    private int position;
+    private String checksum;
+
+    /**
+     * Digests a list of hash prefixes. The list is sorted in place.
+     *
+     * @param hashes hash prefixes
+     * @return digest of the list
+     */
+    static ListDigest of(List<byte[]> hashes) {
+        // sort hashes in lexicographic order
+        Collections.sort(hashes, HashPrefixes.LEXICOGRAPHIC_ORDER);
+        ListDigest digest = new ListDigest();
+        hashes.forEach(digest::accept);
+        return digest;
+    }
+
+    /**
+     * Digests hash prefixes of a cursor.
+     *
+     * @param cursor cursor over hash prefixes in lexicographic order
+     * @return digest of the hash prefixes
+     * @throws IOException when cursor fails to read
+     */
+    static ListDigest of(PrefixCursor cursor) throws IOException {
+        ListDigest digest = new ListDigest();
+        while (cursor.next()) {
+            digest.accept(cursor.current());
+        }
+        return digest;
+    }
+
+    void accept(byte[] hash) {
+        if (position + hash.length > buffer.length) {
+            sha256.update(buffer, 0, position);
+            position = 0;
+        }
+        System.arraycopy(hash, 0, buffer, position, hash.length);
+        position += hash.length;
+        lengths[Math.min(hash.length, MAX_PREFIX_SIZE)]++;
+    }
+
+    /**
+     * Completes the digest. No more hash prefixes shall be accepted after this.
+     *
+     * @return base64 encoded SHA-256 checksum
+     */
+    String checksum() {
+        if (checksum == null) {
+            sha256.update(buffer, 0, position);
+            checksum = Base64.getEncoder().encodeToString(sha256.digest());
+        }
+        return checksum;
+    }
+
+    SortedMap<Integer, Integer> histogram() {
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        for (int length = 0; length < lengths.length; length++) {
+            if (lengths[length] > 0) {
+                histogram.put(length, lengths[length]);
+            }
+        }
+        return histogram;
+    }
+
+}
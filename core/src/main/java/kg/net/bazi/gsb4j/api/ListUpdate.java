@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.data.updates.ListUpdateResponse;
+
+/**
+ * Update of a single threat list with its entry sets already decoded. This is what is left of a
+ * {@link ListUpdateResponse} once it is read by {@link UpdateResponseReader}: encoded entry sets are dropped as soon as
+ * they are decoded.
+ *
+ * @author azilet
+ */
+class ListUpdate {
+
+    private ThreatType threatType;
+    private ThreatEntryType threatEntryType;
+    private PlatformType platformType;
+    private ListUpdateResponse.ResponseType responseType;
+    private final List<byte[]> additions = new ArrayList<>();
+    private final List<int[]> removals = new ArrayList<>();
+    private String newClientState;
+    private ListUpdateResponse.Checksum checksum;
+    private String error;
+
+    ThreatListDescriptor getDescriptor() {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(threatType);
+        descriptor.setPlatformType(platformType);
+        descriptor.setThreatEntryType(threatEntryType);
+        return descriptor;
+    }
+
+    void setThreatType(ThreatType threatType) {
+        this.threatType = threatType;
+    }
+
+    void setThreatEntryType(ThreatEntryType threatEntryType) {
+        this.threatEntryType = threatEntryType;
+    }
+
+    void setPlatformType(PlatformType platformType) {
+        this.platformType = platformType;
+    }
+
+    ListUpdateResponse.ResponseType getResponseType() {
+        return responseType;
+    }
+
+    void setResponseType(ListUpdateResponse.ResponseType responseType) {
+        this.responseType = responseType;
+    }
+
+    /**
+     * Gets added hash prefixes in the order they were received.
+     *
+     * @return list of added hash prefixes
+     */
+    List<byte[]> getAdditions() {
+        return additions;
+    }
+
+    void addRemovals(int[] indices) {
+        removals.add(indices);
+    }
+
+    /**
+     * Gets indices of removed hash prefixes of all removal entry sets.
+     *
+     * @return sorted array of distinct indices
+     */
+    int[] getRemovalIndices() {
+        return removals.stream().flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+    }
+
+    /**
+     * Gets the reason why entries of this update could not be decoded. Such update shall not be applied.
+     *
+     * @return decoding error; {@code null} if all entries are decoded
+     */
+    String getError() {
+        return error;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    boolean isEmpty() {
+        return additions.isEmpty() && removals.stream().allMatch(indices -> indices.length == 0);
+    }
+
+    String getNewClientState() {
+        return newClientState;
+    }
+
+    void setNewClientState(String newClientState) {
+        this.newClientState = newClientState;
+    }
+
+    ListUpdateResponse.Checksum getChecksum() {
+        return checksum;
+    }
+
+    void setChecksum(ListUpdateResponse.Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+}
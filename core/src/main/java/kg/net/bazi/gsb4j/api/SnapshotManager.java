@@ -0,0 +1,326 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import kg.net.bazi.gsb4j.cache.ThreatListDescriptorsCache;
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.db.LocalDatabase;
+import kg.net.bazi.gsb4j.db.PrefixCursor;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports and imports snapshots of verified threat lists. A snapshot is a single file with threat list descriptors,
+ * and hash prefixes, client state and checksum of each threat list. New instances import a snapshot taken by another
+ * instance to serve lookups right away instead of waiting for full updates; subsequent updates are partial ones.
+ * <p>
+ * Snapshot file starts with magic number and format version followed by threat list descriptors. Then, for each
+ * threat list, its descriptor, client state, checksum, and prefixes grouped in sections by prefix size are written.
+ * Prefixes of a section are fixed width and they are stored one after another in lexicographic order. File ends with
+ * CRC32 checksum of all preceding bytes. All numbers are 4-byte big-endian integers and strings are in modified UTF-8.
+ * <p>
+ * Only lists whose prefixes match their stored checksums are exported. Import reads the file twice: the first pass
+ * verifies file checksum and checksum of every list, and the second one writes lists. Nothing is written from a snapshot
+ * that fails verification. Lists that already have client state are not touched.
+ *
+ * @author azilet
+ */
+@Singleton
+public class SnapshotManager {
+
+    static final int MAGIC = 0x47534253;
+    static final int VERSION = 1;
+
+    private static final int PREFIX_MIN_SIZE = 4;
+    private static final int PREFIX_MAX_SIZE = 32;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotManager.class);
+
+    @Inject
+    LocalDatabase localDatabase;
+
+    @Inject
+    StateHolder stateHolder;
+
+    @Inject
+    UpdateJournal journal;
+
+    @Inject
+    ThreatListDescriptorsCache descriptorsCache;
+
+    private final Lock updateLock;
+
+    @Inject
+    SnapshotManager(ThreatListUpdateRunner updateRunner) {
+        this(updateRunner.getLock());
+    }
+
+    SnapshotManager(Lock updateLock) {
+        this.updateLock = updateLock;
+    }
+
+    /**
+     * Exports verified threat lists to a snapshot file. File is replaced atomically.
+     *
+     * @param path path of the snapshot file
+     * @return number of exported threat lists
+     * @throws IOException when I/O errors occur
+     */
+    public int exportSnapshot(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        int count = 0;
+        updateLock.lock();
+        try {
+            Collection<ThreatListDescriptor> descriptors = descriptorsCache.get();
+            List<ThreatListDescriptor> verified = new ArrayList<>();
+            for (ThreatListDescriptor descriptor : descriptors) {
+                if (isVerified(descriptor)) {
+                    verified.add(descriptor);
+                }
+            }
+            CRC32 crc = new CRC32();
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                CheckedOutputStream cos = new CheckedOutputStream(new BufferedOutputStream(fos), crc);
+                DataOutputStream out = new DataOutputStream(cos)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(descriptors.size());
+                for (ThreatListDescriptor descriptor : descriptors) {
+                    writeDescriptor(out, descriptor);
+                }
+                out.writeInt(verified.size());
+                for (ThreatListDescriptor descriptor : verified) {
+                    writeList(out, descriptor);
+                    count++;
+                }
+                out.flush();
+                // trailer is not a part of the checksum
+                new DataOutputStream(fos).writeInt((int) crc.getValue());
+                fos.getFD().sync();
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            updateLock.unlock();
+            Files.deleteIfExists(tmp);
+        }
+        LOGGER.info("Exported {} threat lists to {}", count, path);
+        return count;
+    }
+
+    /**
+     * Imports threat lists from a snapshot file. Threat lists that already have client state are skipped. Import
+     * should be done right after bootstrap, before the first update brings threat lists from API.
+     *
+     * @param path path of the snapshot file
+     * @return number of imported threat lists
+     * @throws IOException when I/O errors occur or the file is not a valid snapshot
+     */
+    public int importSnapshot(Path path) throws IOException {
+        int count;
+        updateLock.lock();
+        try {
+            read(path, false);
+            count = read(path, true);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid snapshot file: " + path, ex);
+        } finally {
+            updateLock.unlock();
+        }
+        LOGGER.info("Imported {} threat lists from {}", count, path);
+        return count;
+    }
+
+    private boolean isVerified(ThreatListDescriptor descriptor) throws IOException {
+        if (StringUtils.isEmpty(stateHolder.getState(descriptor)) || stateHolder.getChecksum(descriptor) == null) {
+            return false;
+        }
+        try (PrefixCursor cursor = localDatabase.cursor(descriptor)) {
+            if (ListDigest.of(cursor).checksum().equals(stateHolder.getChecksum(descriptor))) {
+                return true;
+            }
+        }
+        LOGGER.warn("Local database of {} does not match its checksum; list not exported", descriptor);
+        return false;
+    }
+
+    private void writeList(DataOutputStream out, ThreatListDescriptor descriptor) throws IOException {
+        writeDescriptor(out, descriptor);
+        out.writeUTF(stateHolder.getState(descriptor));
+        out.writeUTF(stateHolder.getChecksum(descriptor));
+
+        SortedMap<Integer, Integer> histogram = stateHolder.getPrefixLengths(descriptor);
+        if (histogram == null) {
+            try (PrefixCursor cursor = localDatabase.cursor(descriptor)) {
+                histogram = ListDigest.of(cursor).histogram();
+            }
+        }
+        out.writeInt(histogram.size());
+        for (Map.Entry<Integer, Integer> e : histogram.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue());
+            // a pass per prefix size keeps sections contiguous without buffering the whole list
+            int written = 0;
+            try (PrefixCursor cursor = localDatabase.cursor(descriptor)) {
+                while (cursor.next()) {
+                    byte[] prefix = cursor.current();
+                    if (prefix.length == e.getKey()) {
+                        out.write(prefix);
+                        written++;
+                    }
+                }
+            }
+            if (written != e.getValue()) {
+                throw new IOException("Local database of " + descriptor + " changed during export");
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot file verifying checksums of the file and of each list.
+     *
+     * @param path path of the snapshot file
+     * @param write whether lists are written to local database as they are read
+     * @return number of written lists
+     * @throws IOException when I/O errors occur or verification fails
+     */
+    private int read(Path path, boolean write) throws IOException {
+        long size = Files.size(path);
+        CRC32 crc = new CRC32();
+        int count = 0;
+        try (InputStream is = Files.newInputStream(path);
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(is), crc))) {
+            readHeader(in, path);
+            int descriptorCount = in.readInt();
+            List<ThreatListDescriptor> descriptors = new ArrayList<>();
+            for (int i = 0; i < descriptorCount; i++) {
+                descriptors.add(readDescriptor(in));
+            }
+            if (write) {
+                descriptorsCache.seed(descriptors);
+            }
+
+            int listCount = in.readInt();
+            for (int i = 0; i < listCount; i++) {
+                if (readList(in, size, write)) {
+                    count++;
+                }
+            }
+            int checksum = (int) crc.getValue();
+            if (in.readInt() != checksum || in.read() != -1) {
+                throw new IOException("Snapshot file checksum mismatch: " + path);
+            }
+        } catch (EOFException ex) {
+            throw new IOException("Unexpected end of snapshot file: " + path, ex);
+        }
+        return count;
+    }
+
+    private boolean readList(DataInputStream in, long fileSize, boolean write) throws IOException {
+        ThreatListDescriptor descriptor = readDescriptor(in);
+        String state = in.readUTF();
+        String checksum = in.readUTF();
+        int sectionCount = in.readInt();
+        List<byte[]> prefixes = new ArrayList<>();
+        for (int i = 0; i < sectionCount; i++) {
+            int size = in.readInt();
+            int count = in.readInt();
+            // file is not verified yet; sizes are checked so that a corrupted file does not exhaust memory
+            if (size < PREFIX_MIN_SIZE || size > PREFIX_MAX_SIZE || count < 0 || (long) size * count > fileSize) {
+                throw new IOException("Corrupted section of threat list " + descriptor);
+            }
+            for (int j = 0; j < count; j++) {
+                byte[] prefix = new byte[size];
+                in.readFully(prefix);
+                prefixes.add(prefix);
+            }
+        }
+        ListDigest digest = ListDigest.of(prefixes);
+        if (!digest.checksum().equals(checksum)) {
+            throw new IOException("Snapshot checksum mismatch of threat list " + descriptor);
+        }
+        if (!write) {
+            return false;
+        }
+        if (StringUtils.isNotEmpty(stateHolder.getState(descriptor))) {
+            LOGGER.info("Threat list {} has client state; not imported", descriptor);
+            return false;
+        }
+
+        journal.begin(descriptor, stateHolder.getChecksum(descriptor), digest, state);
+        stateHolder.setListVersion(descriptor, null, null, stateHolder.getState(descriptor));
+        localDatabase.replace(descriptor, prefixes);
+        stateHolder.setListVersion(descriptor, digest.histogram(), digest.checksum(), state);
+        journal.commit(descriptor);
+        LOGGER.info("Imported {} prefixes of {}", prefixes.size(), descriptor);
+        return true;
+    }
+
+    private static void readHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot file: " + path);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot file version " + version + ": " + path);
+        }
+    }
+
+    private static void writeDescriptor(DataOutputStream out, ThreatListDescriptor descriptor) throws IOException {
+        out.writeUTF(descriptor.getThreatType().name());
+        out.writeUTF(descriptor.getPlatformType().name());
+        out.writeUTF(descriptor.getThreatEntryType().name());
+    }
+
+    private static ThreatListDescriptor readDescriptor(DataInputStream in) throws IOException {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(ThreatType.valueOf(in.readUTF()));
+        descriptor.setPlatformType(PlatformType.valueOf(in.readUTF()));
+        descriptor.setThreatEntryType(ThreatEntryType.valueOf(in.readUTF()));
+        return descriptor;
+    }
+
+}
@@ -24,10 +24,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
 import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
@@ -47,9 +54,14 @@ class StateHolder {
     private static final String UPDATE_MIN_WAIT_TIMESTAMP_KEY = "update_min_wait_timestamp";
     private static final String FIND_MIN_WAIT_DURATION_KEY = "find_min_wait_duration";
     private static final String FIND_MIN_WAIT_TIMESTAMP_KEY = "find_min_wait_timestamp";
+    private static final String PREFIX_LENGTHS_KEY_SUFFIX = ".prefix_lengths";
+    private static final String CHECKSUM_KEY_SUFFIX = ".checksum";
+    private static final String DATABASE_ENTRIES_LIMIT_KEY_SUFFIX = ".max_database_entries";
 
     private final Gsb4jProperties properties;
     private final Properties states = new Properties();
+    private final Map<ThreatListDescriptor, Optional<SortedMap<Integer, Integer>>> prefixLengths
+        = new ConcurrentHashMap<>();
 
     @Inject
     public StateHolder(Gsb4jProperties properties) {
@@ -86,16 +98,127 @@ class StateHolder {
      */
     public void setState(ThreatListDescriptor descriptor, String state) {
         String key = descriptor.toString();
-        if (state != null) {
-            states.setProperty(key, state);
+        putState(descriptor, state);
+        try {
+            dumpToFile();
+            LOGGER.info("State for {} set to '{}'", key, state);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to persist state for {}: {}", key, state, ex);
+        }
+    }
+
+    /**
+     * Gets histogram of hash prefix lengths in the local database for the list.
+     *
+     * @param descriptor threat list descriptor to get histogram for
+     * @return map of prefix lengths to number of prefixes of that length; {@code null} if histogram is unknown
+     */
+    public SortedMap<Integer, Integer> getPrefixLengths(ThreatListDescriptor descriptor) {
+        return prefixLengths.computeIfAbsent(descriptor, d -> {
+            String value = states.getProperty(d + PREFIX_LENGTHS_KEY_SUFFIX);
+            return Optional.ofNullable(value).map(StateHolder::parseHistogram);
+        }).orElse(null);
+    }
+
+    /**
+     * Sets histogram of hash prefix lengths in the local database for the list.
+     *
+     * @param descriptor threat list descriptor to set histogram for
+     * @param histogram map of prefix lengths to number of prefixes of that length; use {@code null} to mark histogram
+     * as unknown
+     */
+    public void setPrefixLengths(ThreatListDescriptor descriptor, SortedMap<Integer, Integer> histogram) {
+        putPrefixLengths(descriptor, histogram);
+        try {
+            dumpToFile();
+            LOGGER.info("Prefix lengths for {} set to {}", descriptor, histogram);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to persist prefix lengths for {}", descriptor, ex);
+        }
+    }
+
+    /**
+     * Gets checksum of the list in the local database which was last verified against API.
+     *
+     * @param descriptor threat list descriptor to get checksum for
+     * @return base64 encoded SHA-256 checksum; {@code null} if checksum is unknown
+     */
+    public String getChecksum(ThreatListDescriptor descriptor) {
+        return states.getProperty(descriptor + CHECKSUM_KEY_SUFFIX);
+    }
+
+    /**
+     * Sets checksum of the list in the local database which is verified against API.
+     *
+     * @param descriptor threat list descriptor to set checksum for
+     * @param checksum base64 encoded SHA-256 checksum; use {@code null} to mark checksum as unknown
+     */
+    public void setChecksum(ThreatListDescriptor descriptor, String checksum) {
+        putChecksum(descriptor, checksum);
+        try {
+            dumpToFile();
+            LOGGER.info("Checksum for {} set to {}", descriptor, checksum);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to persist checksum for {}", descriptor, ex);
+        }
+    }
+
+    /**
+     * Sets histogram of hash prefix lengths, checksum, and client state of the list at once. Values are persisted with
+     * a single write of the states file.
+     *
+     * @param descriptor threat list descriptor to set values for
+     * @param histogram map of prefix lengths to number of prefixes of that length; {@code null} if unknown
+     * @param checksum base64 encoded SHA-256 checksum; {@code null} if unknown
+     * @param state client state; {@code null} to clear state
+     * @see #setPrefixLengths(ThreatListDescriptor, SortedMap)
+     * @see #setChecksum(ThreatListDescriptor, String)
+     * @see #setState(ThreatListDescriptor, String)
+     */
+    public void setListVersion(ThreatListDescriptor descriptor, SortedMap<Integer, Integer> histogram, String checksum,
+        String state) {
+        putPrefixLengths(descriptor, histogram);
+        putChecksum(descriptor, checksum);
+        putState(descriptor, state);
+        try {
+            dumpToFile();
+            LOGGER.info("State for {} set to '{}' with checksum {}", descriptor, state, checksum);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to persist state for {}: {}", descriptor, state, ex);
+        }
+    }
+
+    /**
+     * Gets max number of entries of the list in the local database set to keep memory footprint within the budget.
+     *
+     * @param descriptor threat list descriptor to get limit for
+     * @return max number of entries; zero if not limited
+     */
+    public int getDatabaseEntriesLimit(ThreatListDescriptor descriptor) {
+        return Integer.parseInt(states.getProperty(descriptor + DATABASE_ENTRIES_LIMIT_KEY_SUFFIX, "0"));
+    }
+
+    /**
+     * Sets max number of entries of the list in the local database set to keep memory footprint within the budget.
+     *
+     * @param descriptor threat list descriptor to set limit for
+     * @param limit max number of entries; use zero to remove the limit
+     */
+    public void setDatabaseEntriesLimit(ThreatListDescriptor descriptor, int limit) {
+        String key = descriptor + DATABASE_ENTRIES_LIMIT_KEY_SUFFIX;
+        if (limit == getDatabaseEntriesLimit(descriptor)) {
+            return;
+        }
+        if (limit > 0) {
+            states.setProperty(key, Integer.toString(limit));
         } else {
             states.remove(key);
         }
         try {
             dumpToFile();
-            LOGGER.info("State for {} set to '{}'", key, state);
+            LOGGER.info("Database entries limit for {} set to {}", descriptor, limit);
         } catch (IOException ex) {
-            LOGGER.error("Failed to persist state for {}: {}", key, state, ex);
+            LOGGER.error("Failed to persist database entries limit for {}", descriptor, ex);
         }
     }
 
@@ -135,12 +258,21 @@ class StateHolder {
      * @return {@code true} if list update requests are allowed; {@code false} otherwise
      */
     public boolean isUpdateAllowed() {
+        return getUpdateWaitMillis() == 0;
+    }
+
+    /**
+     * Gets time left until list update requests are allowed based on the minimum wait duration value.
+     *
+     * @return time left in millis; zero if list update requests are allowed
+     */
+    public long getUpdateWaitMillis() {
         long minimumWaitDuration = Long.parseLong(states.getProperty(UPDATE_MIN_WAIT_DURATION_KEY, "0"));
         if (minimumWaitDuration > 0) {
             long timestamp = Long.parseLong(states.getProperty(UPDATE_MIN_WAIT_TIMESTAMP_KEY));
-            return minimumWaitDuration + timestamp < System.currentTimeMillis();
+            return Math.max(0, minimumWaitDuration + timestamp - System.currentTimeMillis());
         }
-        return true;
+        return 0;
     }
 
     /**
@@ -168,10 +300,66 @@ class StateHolder {
         return parent.resolve("states").toFile();
     }
 
+    static String formatHistogram(SortedMap<Integer, Integer> histogram) {
+        return histogram.entrySet().stream()
+            .map(e -> e.getKey() + ":" + e.getValue())
+            .collect(Collectors.joining(","));
+    }
+
+    private void putState(ThreatListDescriptor descriptor, String state) {
+        String key = descriptor.toString();
+        if (state != null && !state.isEmpty()) {
+            states.setProperty(key, state);
+        } else {
+            states.remove(key);
+        }
+    }
+
+    private void putPrefixLengths(ThreatListDescriptor descriptor, SortedMap<Integer, Integer> histogram) {
+        String key = descriptor + PREFIX_LENGTHS_KEY_SUFFIX;
+        if (histogram != null) {
+            SortedMap<Integer, Integer> copy = Collections.unmodifiableSortedMap(new TreeMap<>(histogram));
+            states.setProperty(key, formatHistogram(copy));
+            prefixLengths.put(descriptor, Optional.of(copy));
+        } else {
+            states.remove(key);
+            prefixLengths.put(descriptor, Optional.empty());
+        }
+    }
+
+    private void putChecksum(ThreatListDescriptor descriptor, String checksum) {
+        String key = descriptor + CHECKSUM_KEY_SUFFIX;
+        if (checksum != null) {
+            states.setProperty(key, checksum);
+        } else {
+            states.remove(key);
+        }
+    }
+
+    static SortedMap<Integer, Integer> parseHistogram(String value) {
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        for (String entry : value.split(",")) {
+            if (!entry.isEmpty()) {
+                String[] parts = entry.split(":");
+                histogram.put(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+            }
+        }
+        return Collections.unmodifiableSortedMap(histogram);
+    }
+
     private synchronized void dumpToFile() throws IOException {
+        // states are written to a temporary file which then replaces the old one, so a crash while writing does not
+        // leave a truncated file behind
         File file = getStatesFile(properties.getDataDirectory());
-        try (OutputStream os = new FileOutputStream(file)) {
-            states.store(os, "");
+        Path tmp = Files.createTempFile(file.toPath().getParent(), file.getName(), ".tmp");
+        try {
+            try (FileOutputStream os = new FileOutputStream(tmp.toFile())) {
+                states.store(os, "");
+                os.getFD().sync();
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
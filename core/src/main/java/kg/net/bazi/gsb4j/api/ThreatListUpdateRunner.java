@@ -20,15 +20,26 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import kg.net.bazi.gsb4j.Gsb4jBinding;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Threat list update runner that periodically tries to make update requests.
+ * Threat list update runner that schedules update requests.
+ * <p>
+ * Next update is scheduled right when minimum wait duration set by API expires. If API sets no minimum wait duration,
+ * configured update interval is used. Failed requests are retried in back-off mode as described in the API docs: first
+ * retry is made in 15 to 30 minutes, and the wait time doubles with each consecutive failure up to 24 hours. All
+ * delays except minimum wait duration are randomized so that instances started at the same time do not send their
+ * requests in lockstep.
  *
  * @author azilet
  */
@@ -36,26 +47,112 @@ class ThreatListUpdateRunner implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ThreatListUpdateRunner.class);
 
+    private static final long INITIAL_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long INITIAL_JITTER_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long BACKOFF_BASE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long BACKOFF_MAX_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    @Inject
+    Provider<ThreatListUpdater> updateProvider;
+
+    private final Lock lock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+    private final StateHolder stateHolder;
+    private final long intervalMillis;
+    private int failures;
+
     @Inject
-    private Provider<ThreatListUpdater> updateProvider;
+    public ThreatListUpdateRunner(@Gsb4jBinding ScheduledExecutorService scheduler, StateHolder stateHolder,
+        Gsb4jProperties properties) {
+        this.scheduler = scheduler;
+        this.stateHolder = stateHolder;
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(properties.getUpdateInterval());
+    }
 
+    /**
+     * Schedules the first update. Called by the injector once all fields are injected, so the runner is not handed
+     * to the scheduler while it is still being constructed.
+     */
     @Inject
-    public ThreatListUpdateRunner(@Gsb4jBinding ScheduledExecutorService scheduler) {
-        startMe(scheduler);
+    void start() {
+        schedule(INITIAL_DELAY_MILLIS + jitter(INITIAL_JITTER_MILLIS));
     }
 
     @Override
     public void run() {
-        ThreatListUpdater updater = updateProvider.get();
+        boolean succeeded = false;
+        lock.lock();
         try {
-            updater.requestUpdate();
+            updateProvider.get().requestUpdate();
+            succeeded = true;
         } catch (IOException | RuntimeException ex) {
             LOGGER.error("Failed to perform list update request", ex);
+        } catch (Error err) {
+            LOGGER.error("List update aborted by an error", err);
+            throw err;
+        } finally {
+            lock.unlock();
+            // next update is scheduled whatever happens, otherwise updates would stop for good
+            long delay;
+            if (succeeded) {
+                failures = 0;
+                delay = nextDelay(stateHolder.getUpdateWaitMillis(), intervalMillis, jitter(intervalMillis / 10));
+            } else {
+                failures++;
+                delay = backoffDelay(failures, ThreadLocalRandom.current().nextDouble());
+                LOGGER.info("Retrying list update in {} s", delay / 1000);
+            }
+            schedule(delay);
+        }
+    }
+
+    /**
+     * Gets lock which is held while list update is in progress. Other writers of local database and client states
+     * take this lock to keep updates out.
+     *
+     * @return update lock
+     */
+    Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * Computes delay of the next update after a successful one.
+     *
+     * @param waitMillis time left until minimum wait duration expires
+     * @param intervalMillis configured update interval
+     * @param jitterMillis random addition to the update interval
+     * @return delay in millis
+     */
+    static long nextDelay(long waitMillis, long intervalMillis, long jitterMillis) {
+        return waitMillis > 0 ? waitMillis : intervalMillis + jitterMillis;
+    }
+
+    /**
+     * Computes delay of the next update in back-off mode: {@code MIN((2^(N-1) * 15 minutes) * (RAND + 1), 24 hours)}
+     * where N is the number of consecutive failures.
+     *
+     * @param failures number of consecutive failed requests; at least 1
+     * @param random random number in the range [0, 1)
+     * @return delay in millis
+     */
+    static long backoffDelay(int failures, double random) {
+        // 2^7 * 15 minutes is already beyond 24 hours; smaller shift keeps multiplication from overflowing
+        long multiplier = 1L << Math.min(failures - 1, 7);
+        return Math.min(Math.round(multiplier * BACKOFF_BASE_MILLIS * (random + 1)), BACKOFF_MAX_MILLIS);
+    }
+
+    private void schedule(long delayMillis) {
+        try {
+            scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            LOGGER.debug("Next list update scheduled in {} ms", delayMillis);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.info("List updates stopped: scheduler is shut down");
         }
     }
 
-    private void startMe(ScheduledExecutorService scheduler) {
-        scheduler.scheduleWithFixedDelay(this, 5, 600, TimeUnit.SECONDS);
+    private static long jitter(long maxMillis) {
+        return maxMillis > 0 ? ThreadLocalRandom.current().nextLong(maxMillis) : 0;
     }
 
 }
@@ -19,21 +19,24 @@ package kg.net.bazi.gsb4j.api;
 import com.google.inject.Inject;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import kg.net.bazi.gsb4j.Gsb4j;
+import kg.net.bazi.gsb4j.Gsb4jBinding;
 import kg.net.bazi.gsb4j.cache.ThreatListDescriptorsCache;
 import kg.net.bazi.gsb4j.data.ThreatEntryType;
 import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
-import kg.net.bazi.gsb4j.data.updates.CompressionType;
 import kg.net.bazi.gsb4j.data.updates.Constraints;
 import kg.net.bazi.gsb4j.data.updates.ListUpdateRequest;
-import kg.net.bazi.gsb4j.data.updates.ListUpdateResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -52,18 +55,34 @@ class ThreatListUpdater extends SafeBrowsingApiBase {
     @Inject
     private StateHolder stateHolder;
 
+    @Inject
+    private UpdateResponseReader updateResponseReader;
+
     @Inject
     private UpdateResponseHandler updateResponseHandler;
 
+    @Inject
+    private UpdateJournal updateJournal;
+
+    @Inject
+    @Gsb4jBinding
+    private ExecutorService updateExecutor;
+
     @Inject
     private ThreatListDescriptorsCache descriptorsCache;
 
+    @Inject
+    private UpdateConstraints updateConstraints;
+
     /**
      * Performs a list update request to API.
      *
-     * @throws IOException when connections problems occur
+     * @throws IOException when connections problems occur or any of the list updates failed
      */
     public void requestUpdate() throws IOException {
+        // make client states consistent with local database in case previous process stopped in the middle of update
+        updateJournal.recover();
+
         if (!stateHolder.isUpdateAllowed()) {
             LOGGER.info("Update request skipped due to minimum wait duration.");
             return;
@@ -81,24 +100,58 @@ class ThreatListUpdater extends SafeBrowsingApiBase {
         Map<String, Object> payload = wrapPayload("listUpdateRequests", updateRequests);
         HttpUriRequest req = makeRequest(HttpPost.METHOD_NAME, "threatListUpdates:fetch", payload);
 
-        ApiResponse apiResp;
+        List<Future<Boolean>> results = new ArrayList<>();
+        String minimumWaitDuration;
+        int failed;
         try ( CloseableHttpResponse resp = httpClient.execute(req);
              Reader reader = getResponseReader(resp)) {
-            apiResp = gson.fromJson(reader, ApiResponse.class);
-        }
-        // no null check here - parser returns null only when input is at EOF which is really an exceptional case
-        if (apiResp.listUpdateResponses != null) {
-            int successful = updateResponseHandler.apply(apiResp.listUpdateResponses);
-            int total = apiResp.listUpdateResponses.size();
-
-            LOGGER.info("{} of {} updates successfully applied to local database", successful, total);
-            LOGGER.info("=========================================================");
+            // each list update is applied as soon as it is read; response is never held in memory as a whole
+            minimumWaitDuration = updateResponseReader.read(reader,
+                update -> results.add(updateExecutor.submit(() -> updateResponseHandler.apply(update))));
+        } finally {
+            // lists already read are applied even if the rest of the response fails
+            failed = awaitResults(results);
         }
         // update min wait duration *only after* we have handled all updates
-        if (apiResp.minimumWaitDuration != null) {
-            long duration = Gsb4j.durationToMillis(apiResp.minimumWaitDuration);
+        if (minimumWaitDuration != null) {
+            long duration = Gsb4j.durationToMillis(minimumWaitDuration);
             stateHolder.setMinWaitDurationForUpdates(duration);
         }
+        if (failed > 0) {
+            // failed lists are retried with back-off
+            throw new IOException(failed + " of " + results.size() + " list updates failed");
+        }
+    }
+
+    /**
+     * Waits for list updates to be applied.
+     *
+     * @param results results of list updates
+     * @return number of list updates that failed with an error
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    private int awaitResults(List<Future<Boolean>> results) throws InterruptedIOException {
+        int successful = 0;
+        int failed = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (result.get()) {
+                    successful++;
+                }
+            } catch (ExecutionException ex) {
+                // failure of a list does not affect other lists
+                LOGGER.error("Failed to apply list update", ex.getCause());
+                failed++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while applying list updates");
+            }
+        }
+        if (!results.isEmpty()) {
+            LOGGER.info("{} of {} updates successfully applied to local database", successful, results.size());
+            LOGGER.info("=========================================================");
+        }
+        return failed;
     }
 
     @Override
@@ -107,39 +160,22 @@ class ThreatListUpdater extends SafeBrowsingApiBase {
     }
 
     private List<ListUpdateRequest> makeListUpdateRequests(Collection<ThreatListDescriptor> descriptors) {
-        Constraints constraints = makeConstraints();
-        List<ListUpdateRequest> updateRequests = new ArrayList<>(descriptors.size());
-
-        Iterator<ThreatListDescriptor> it = descriptors.stream()
-            .filter(d -> d.getThreatEntryType() == ThreatEntryType.URL).iterator();
-        while (it.hasNext()) {
-            ThreatListDescriptor descriptor = it.next();
+        List<ThreatListDescriptor> urlDescriptors = descriptors.stream()
+            .filter(d -> d.getThreatEntryType() == ThreatEntryType.URL)
+            .collect(Collectors.toList());
+        Map<ThreatListDescriptor, Constraints> constraints = updateConstraints.make(urlDescriptors);
 
+        List<ListUpdateRequest> updateRequests = new ArrayList<>(urlDescriptors.size());
+        for (ThreatListDescriptor descriptor : urlDescriptors) {
             ListUpdateRequest req = new ListUpdateRequest();
             req.setThreatType(descriptor.getThreatType());
             req.setPlatformType(descriptor.getPlatformType());
             req.setThreatEntryType(descriptor.getThreatEntryType());
             req.setState(stateHolder.getState(descriptor));
-            req.setConstraints(constraints);
+            req.setConstraints(constraints.get(descriptor));
             updateRequests.add(req);
         }
         return updateRequests;
     }
 
-    private Constraints makeConstraints() {
-        Constraints constraints = new Constraints();
-        constraints.setRegion("US");
-        constraints.setSupportedCompressions(new CompressionType[] {
-            CompressionType.RAW
-        });
-        // NOTE: here we do not set max__Entries fields, hence they are serialized with default 0 value - it works!
-        return constraints;
-    }
-
-    private static class ApiResponse {
-
-        private List<ListUpdateResponse> listUpdateResponses;
-        private String minimumWaitDuration;
-    }
-
 }
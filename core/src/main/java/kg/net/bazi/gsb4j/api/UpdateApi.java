@@ -20,9 +20,13 @@ import com.google.inject.Inject;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -30,6 +34,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 
 import kg.net.bazi.gsb4j.Gsb4j;
 import kg.net.bazi.gsb4j.cache.ThreatListDescriptorsCache;
@@ -143,7 +148,8 @@ class UpdateApi extends SafeBrowsingApiBase implements SafeBrowsingApi {
 
     /**
      * This method checks hash prefixes of the URL whether they are listed in the local database and returns all
-     * existing collisions.
+     * existing collisions. All hash prefixes of all expressions are checked against all threat lists in a single bulk
+     * query to the local database.
      *
      * @param url URL string to check
      * @return collection of hash prefix collisions in local database; never {@code null}
@@ -153,16 +159,31 @@ class UpdateApi extends SafeBrowsingApiBase implements SafeBrowsingApi {
         String canonicalized = canonicalizer.canonicalize(url);
         Set<String> expressions = expressionGenerator.makeExpressions(canonicalized);
 
+        // each expression is hashed once and prefixes of all lengths are taken from its hash
+        Collection<ThreatListDescriptor> descriptors = descriptorsCache.get();
+        Set<Integer> prefixLengths = getPrefixLengths(descriptors);
+        Map<ByteBuffer, List<byte[]>> prefixes = new HashMap<>();
+        for (String expression : expressions) {
+            byte[] fullHash = hashing.computeRawHash(expression);
+            for (int n : prefixLengths) {
+                // prefixes are copied on purpose: local databases take candidates as whole arrays, and a URL makes
+                // a few dozen of them at most; different expressions may share a prefix
+                ByteBuffer prefix = ByteBuffer.wrap(Arrays.copyOf(fullHash, n));
+                prefixes.computeIfAbsent(prefix, k -> new ArrayList<>()).add(fullHash);
+            }
+        }
+        List<byte[]> hashes = new ArrayList<>(prefixes.size());
+        prefixes.keySet().forEach(prefix -> hashes.add(prefix.array()));
+
         Set<UrlHashCollision> collisions = new HashSet<>();
-        for (int n = Hashing.MIN_SIGNIFICANT_BYTES; n < Hashing.MAX_SIGNIFICANT_BYTES; n++) {
-            for (String expression : expressions) {
-                String prefix = hashing.computeHashPrefix(expression, n);
-                List<ThreatListDescriptor> lists = presentInThreatLists(prefix);
-                for (ThreatListDescriptor descriptor : lists) {
+        Map<ThreatListDescriptor, List<byte[]>> matches = localDatabase.findMatches(hashes, descriptors);
+        for (Map.Entry<ThreatListDescriptor, List<byte[]>> e : matches.entrySet()) {
+            for (byte[] prefix : e.getValue()) {
+                for (byte[] fullHash : prefixes.get(ByteBuffer.wrap(prefix))) {
                     UrlHashCollision collision = new UrlHashCollision();
-                    collision.hashPrefix = prefix;
-                    collision.fullHash = hashing.computeFullHash(expression);
-                    collision.descriptor = descriptor;
+                    collision.hashPrefix = Hex.encodeHexString(prefix);
+                    collision.fullHash = Hex.encodeHexString(fullHash);
+                    collision.descriptor = e.getKey();
                     collisions.add(collision);
                 }
             }
@@ -170,14 +191,27 @@ class UpdateApi extends SafeBrowsingApiBase implements SafeBrowsingApi {
         return collisions;
     }
 
-    private List<ThreatListDescriptor> presentInThreatLists(String prefix) throws IOException {
-        List<ThreatListDescriptor> lists = new ArrayList<>();
-        for (ThreatListDescriptor descriptor : descriptorsCache.get()) {
-            if (localDatabase.contains(prefix, descriptor)) {
-                lists.add(descriptor);
+    /**
+     * Gets hash prefix lengths that exist in any of the threat lists. If prefix lengths of a list are unknown, then all
+     * possible prefix lengths are returned.
+     *
+     * @param descriptors threat lists to get prefix lengths for
+     * @return set of prefix lengths in ascending order
+     */
+    private Set<Integer> getPrefixLengths(Collection<ThreatListDescriptor> descriptors) {
+        Set<Integer> lengths = new TreeSet<>();
+        for (ThreatListDescriptor descriptor : descriptors) {
+            Map<Integer, Integer> histogram = stateHolder.getPrefixLengths(descriptor);
+            if (histogram == null) {
+                lengths.clear();
+                for (int n = Hashing.MIN_SIGNIFICANT_BYTES; n < Hashing.MAX_SIGNIFICANT_BYTES; n++) {
+                    lengths.add(n);
+                }
+                return lengths;
             }
+            lengths.addAll(histogram.keySet());
         }
-        return lists;
+        return lengths;
     }
 
     private List<ThreatMatch> requestFullHashes(Set<UrlHashCollision> collisions) throws DecoderException, IOException {
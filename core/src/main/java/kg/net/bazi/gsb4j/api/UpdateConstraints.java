@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import com.google.inject.Inject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.updates.CompressionType;
+import kg.net.bazi.gsb4j.data.updates.Constraints;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes constraints of list update requests.
+ * <p>
+ * Size limits of local database and of updates come from configuration. If memory budget is configured, memory
+ * footprint of each threat list is estimated from the number of its entries in local database. Once the total footprint
+ * exceeds the budget, database size limits of threat lists are tightened in proportion to their sizes. Limits are
+ * relaxed again when the footprint falls well below the budget. Lists with no entries yet, as on a cold start, are
+ * limited to an equal share of the budget so that their first full updates fit in memory.
+ *
+ * @author azilet
+ */
+class UpdateConstraints {
+
+    /**
+     * Smallest limit of entries accepted by API.
+     */
+    static final int MIN_ENTRIES = 1 << 10;
+
+    /**
+     * Largest limit of entries accepted by API.
+     */
+    static final int MAX_ENTRIES = 1 << 20;
+
+    /**
+     * Estimate of memory taken by an entry of a threat list: decoded hash prefix object held while the list is being
+     * updated together with its share in the index of local database.
+     */
+    static final int BYTES_PER_ENTRY = 32;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpdateConstraints.class);
+
+    @Inject
+    Gsb4jProperties properties;
+
+    @Inject
+    StateHolder stateHolder;
+
+    /**
+     * Makes constraints of update requests of threat lists.
+     *
+     * @param descriptors descriptors of all threat lists requested together
+     * @return map of descriptors to constraints
+     */
+    Map<ThreatListDescriptor, Constraints> make(Collection<ThreatListDescriptor> descriptors) {
+        int maxDatabaseEntries = toLimit(properties.getMaxDatabaseEntries());
+        int maxUpdateEntries = toLimit(properties.getMaxUpdateEntries());
+        long budget = properties.getUpdateMemoryBudget();
+
+        Map<ThreatListDescriptor, Long> entries = new HashMap<>();
+        long footprint = 0;
+        for (ThreatListDescriptor descriptor : descriptors) {
+            long count = countEntries(descriptor);
+            entries.put(descriptor, count);
+            footprint += count * BYTES_PER_ENTRY;
+        }
+        if (budget > 0) {
+            LOGGER.info("Estimated memory footprint of threat lists is {} bytes of {} bytes budget", footprint, budget);
+        }
+
+        Map<ThreatListDescriptor, Constraints> result = new HashMap<>();
+        for (ThreatListDescriptor descriptor : descriptors) {
+            int budgetLimit = 0;
+            if (budget > 0) {
+                budgetLimit = nextLimit(stateHolder.getDatabaseEntriesLimit(descriptor), entries.get(descriptor),
+                    footprint, budget, descriptors.size());
+                stateHolder.setDatabaseEntriesLimit(descriptor, budgetLimit);
+            }
+            Constraints constraints = new Constraints();
+            constraints.setRegion("US");
+            constraints.setSupportedCompressions(new CompressionType[] {
+                CompressionType.RAW, CompressionType.RICE
+            });
+            // zero means no limit, it is serialized as is
+            constraints.setMaxDatabaseEntries(min(maxDatabaseEntries, budgetLimit));
+            constraints.setMaxUpdateEntries(min(maxUpdateEntries, budgetLimit));
+            result.put(descriptor, constraints);
+        }
+        return result;
+    }
+
+    private long countEntries(ThreatListDescriptor descriptor) {
+        SortedMap<Integer, Integer> histogram = stateHolder.getPrefixLengths(descriptor);
+        return histogram != null ? histogram.values().stream().mapToLong(Integer::longValue).sum() : 0;
+    }
+
+    /**
+     * Computes budget driven limit of entries of a threat list.
+     *
+     * @param current current limit; zero if not limited
+     * @param entries number of entries of the list in local database
+     * @param footprint estimated memory footprint of all lists in bytes
+     * @param budget memory budget in bytes
+     * @param lists number of lists sharing the budget
+     * @return new limit; zero if not limited
+     */
+    static int nextLimit(int current, long entries, long footprint, long budget, int lists) {
+        if (footprint > budget && entries > 0) {
+            int limit = toLimit(Math.max(1, entries * budget / footprint));
+            return current > 0 ? Math.min(current, limit) : limit;
+        }
+        if (current == 0 && entries == 0) {
+            return toLimit(Math.max(1, budget / BYTES_PER_ENTRY / Math.max(1, lists)));
+        }
+        if (current > 0 && footprint * 2 < budget) {
+            return current < MAX_ENTRIES ? current * 2 : 0;
+        }
+        return current;
+    }
+
+    /**
+     * Rounds number of entries down to a limit accepted by API: a power of 2 between 2<sup>10</sup> and 2<sup>20</sup>.
+     *
+     * @param entries number of entries
+     * @return limit of entries; zero if supplied number is not positive which means no limit
+     */
+    static int toLimit(long entries) {
+        if (entries <= 0) {
+            return 0;
+        }
+        long clamped = Math.max(MIN_ENTRIES, Math.min(MAX_ENTRIES, entries));
+        return (int) Long.highestOneBit(clamped);
+    }
+
+    private static int min(int limit, int other) {
+        if (limit == 0 || other == 0) {
+            return Math.max(limit, other);
+        }
+        return Math.min(limit, other);
+    }
+
+}
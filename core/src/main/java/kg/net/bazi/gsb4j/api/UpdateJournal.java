@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.db.LocalDatabase;
+import kg.net.bazi.gsb4j.db.PrefixCursor;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead journal of threat list versions written to local database.
+ * <p>
+ * Before a verified list update is written to local database, new version of the list is recorded in the journal: its
+ * checksum, client state, and prefix length histogram, together with the checksum of the version being replaced. Once
+ * local database and client state are both updated, the record is committed. A record that is not committed means the
+ * process stopped somewhere in between.
+ * <p>
+ * On recovery, checksum of each such list is computed from local database. If it matches the new version, client state
+ * is rolled forward to the recorded one. If it matches the old version, client state is kept, so the next update of the
+ * list is an ordinary partial update. Otherwise client state of the list is cleared and only this list is downloaded
+ * anew. Journal is truncated once there are no records in flight.
+ *
+ * @author azilet
+ */
+@Singleton
+class UpdateJournal {
+
+    static final String FILE_NAME = "update.journal";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpdateJournal.class);
+    private static final String BEGIN = "BEGIN";
+    private static final String COMMIT = "COMMIT";
+    private static final String SEPARATOR = "\t";
+
+    private final Path file;
+    private final Map<ThreatListDescriptor, Record> pending = new LinkedHashMap<>();
+    private boolean recovered;
+
+    @Inject
+    LocalDatabase localDatabase;
+
+    @Inject
+    StateHolder stateHolder;
+
+    @Inject
+    UpdateJournal(Gsb4jProperties properties) {
+        this(properties.getDataDirectory().resolve(FILE_NAME));
+    }
+
+    UpdateJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Records a new version of the list which is about to be written to local database.
+     *
+     * @param descriptor descriptor of the list
+     * @param oldChecksum checksum of the list in local database; {@code null} if unknown
+     * @param digest digest of the new version of the list
+     * @param state client state of the new version of the list
+     * @throws IOException when journal cannot be written
+     */
+    synchronized void begin(ThreatListDescriptor descriptor, String oldChecksum, ListDigest digest, String state)
+        throws IOException {
+        // records left by a previous process must be recovered before the journal is reused
+        recover();
+        Record record = new Record(descriptor, oldChecksum, digest.checksum(), state, digest.histogram());
+        append(record.format());
+        pending.put(descriptor, record);
+    }
+
+    /**
+     * Commits the version of the list which is written to local database and whose client state is saved.
+     *
+     * @param descriptor descriptor of the list
+     * @throws IOException when journal cannot be written
+     */
+    synchronized void commit(ThreatListDescriptor descriptor) throws IOException {
+        pending.remove(descriptor);
+        if (pending.isEmpty()) {
+            Files.deleteIfExists(file);
+        } else {
+            append(String.join(SEPARATOR, COMMIT, format(descriptor)));
+        }
+    }
+
+    /**
+     * Brings client states of lists with records that are not committed in line with local database. Recovery is done
+     * once; subsequent calls do nothing.
+     *
+     * @throws IOException when journal or local database cannot be read
+     */
+    synchronized void recover() throws IOException {
+        if (recovered) {
+            return;
+        }
+        if (Files.exists(file)) {
+            Map<ThreatListDescriptor, Record> records = read(Files.readAllLines(file, StandardCharsets.UTF_8));
+            for (Record record : records.values()) {
+                recover(record);
+            }
+            Files.delete(file);
+        }
+        recovered = true;
+    }
+
+    private void recover(Record record) throws IOException {
+        ThreatListDescriptor descriptor = record.descriptor;
+        ListDigest digest;
+        try (PrefixCursor cursor = localDatabase.cursor(descriptor)) {
+            digest = ListDigest.of(cursor);
+        }
+        String checksum = digest.checksum();
+        if (checksum.equals(record.newChecksum)) {
+            LOGGER.info("Rolling {} forward to its last written version", descriptor);
+            stateHolder.setListVersion(descriptor, record.histogram, checksum, record.state);
+        } else if (record.oldChecksum == null || checksum.equals(record.oldChecksum)) {
+            LOGGER.info("Rolling {} back to its previous version", descriptor);
+            stateHolder.setListVersion(descriptor, digest.histogram(), checksum, stateHolder.getState(descriptor));
+        } else {
+            LOGGER.warn("Local database of {} matches neither version; list will be downloaded anew", descriptor);
+            stateHolder.setListVersion(descriptor, digest.histogram(), null, null);
+        }
+    }
+
+    private void append(String line) throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file.toFile(), true)) {
+            os.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            os.getFD().sync();
+        }
+    }
+
+    private static Map<ThreatListDescriptor, Record> read(List<String> lines) {
+        Map<ThreatListDescriptor, Record> records = new LinkedHashMap<>();
+        for (String line : lines) {
+            String[] parts = line.split(SEPARATOR, -1);
+            try {
+                if (parts[0].equals(BEGIN) && parts.length == 9) {
+                    Record record = Record.parse(parts);
+                    records.put(record.descriptor, record);
+                } else if (parts[0].equals(COMMIT) && parts.length == 4) {
+                    records.remove(parse(parts, 1));
+                } else {
+                    // last line may be incomplete if process stopped while it was being written
+                    LOGGER.warn("Skipping malformed journal line: {}", line);
+                }
+            } catch (IllegalArgumentException ex) {
+                LOGGER.warn("Skipping malformed journal line: {}", line);
+            }
+        }
+        return records;
+    }
+
+    private static String format(ThreatListDescriptor descriptor) {
+        return String.join(SEPARATOR, descriptor.getThreatType().name(), descriptor.getPlatformType().name(),
+            descriptor.getThreatEntryType().name());
+    }
+
+    private static ThreatListDescriptor parse(String[] parts, int offset) {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(ThreatType.valueOf(parts[offset]));
+        descriptor.setPlatformType(PlatformType.valueOf(parts[offset + 1]));
+        descriptor.setThreatEntryType(ThreatEntryType.valueOf(parts[offset + 2]));
+        return descriptor;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Journal record of a list version.
+     */
+    private static class Record {
+
+        final ThreatListDescriptor descriptor;
+        final String oldChecksum;
+        final String newChecksum;
+        final String state;
+        final SortedMap<Integer, Integer> histogram;
+
+        Record(ThreatListDescriptor descriptor, String oldChecksum, String newChecksum, String state,
+            SortedMap<Integer, Integer> histogram) {
+            this.descriptor = descriptor;
+            this.oldChecksum = oldChecksum;
+            this.newChecksum = newChecksum;
+            this.state = state;
+            this.histogram = histogram;
+        }
+
+        String format() {
+            return String.join(SEPARATOR, BEGIN, UpdateJournal.format(descriptor), nullToEmpty(oldChecksum),
+                newChecksum, nullToEmpty(state), StateHolder.formatHistogram(histogram), "END");
+        }
+
+        static Record parse(String[] parts) {
+            if (!parts[8].equals("END")) {
+                throw new IllegalArgumentException("Incomplete record");
+            }
+            return new Record(UpdateJournal.parse(parts, 1), emptyToNull(parts[4]), parts[5], emptyToNull(parts[6]),
+                StateHolder.parseHistogram(parts[7]));
+        }
+    }
+
+}
@@ -19,33 +19,26 @@ package kg.net.bazi.gsb4j.api;
 import com.google.inject.Inject;
 
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.util.Arrays;
-import java.util.Base64;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
-import kg.net.bazi.gsb4j.data.updates.CompressionType;
 import kg.net.bazi.gsb4j.data.updates.ListUpdateResponse;
-import kg.net.bazi.gsb4j.data.updates.ThreatEntrySet;
 import kg.net.bazi.gsb4j.db.LocalDatabase;
-import kg.net.bazi.gsb4j.util.RiceCompression;
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
+import kg.net.bazi.gsb4j.db.PrefixCursor;
+import kg.net.bazi.gsb4j.util.HashPrefixes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Parses and applies threat list updates from API to local database.
+ * Applies threat list updates from API to local database.
+ * <p>
+ * Updates of different threat lists may be applied concurrently. Decoding, sorting, and verification of lists run in
+ * parallel while writes to local database are done one list at a time: local databases take a single writer anyway,
+ * and waiting for the lock does not time out the way waiting for a database connection does.
  *
  * @author azilet
  */
@@ -53,6 +46,8 @@ class UpdateResponseHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UpdateResponseHandler.class);
 
+    private final Lock writeLock = new ReentrantLock(true);
+
     @Inject
     LocalDatabase localDatabase;
 
@@ -60,215 +55,127 @@ class UpdateResponseHandler {
     StateHolder stateHolder;
 
     @Inject
-    RiceCompression riceCompression;
+    UpdateJournal journal;
 
     /**
-     * Applies list updates to local database.
+     * Applies update of a threat list to local database. This method is safe to call concurrently for different threat
+     * lists.
      *
-     * @param updateResponses list updates
-     * @return number of list updates successfully updated and applied to local database
-     * @throws IOException when database read/write errors occur
+     * @param update decoded list update
+     * @return {@code true} if list update is successfully verified and applied to local database
+     * @throws IOException when database read/write errors occur or the update could not be decoded
      */
-    public int apply(List<ListUpdateResponse> updateResponses) throws IOException {
-        AtomicInteger counter = new AtomicInteger();
-        for (ListUpdateResponse updateResponse : updateResponses) {
-            ThreatListDescriptor descriptor = makeDescriptor(updateResponse);
-            if (updateResponse.getResponseType() == ListUpdateResponse.ResponseType.FULL_UPDATE) {
-                LOGGER.info("===== Applying FULL update for {} =====", descriptor);
-                List<String> updatedHashes = doFullUpdate(updateResponse);
-                verifyAndSave(updatedHashes, updateResponse, counter);
-            } else if (updateResponse.getResponseType() == ListUpdateResponse.ResponseType.PARTIAL_UPDATE) {
-                LOGGER.info("===== Applying PARTIAL update for {} =====", descriptor);
-                List<String> updatedHashes = doPartialUpdate(updateResponse);
-                verifyAndSave(updatedHashes, updateResponse, counter);
-            } else {
-                LOGGER.warn("Unknown response type: {}", updateResponse.getResponseType());
-            }
-            LOGGER.info("");
+    public boolean apply(ListUpdate update) throws IOException {
+        boolean applied = false;
+        ThreatListDescriptor descriptor = update.getDescriptor();
+        if (update.getError() != null) {
+            // list is requested anew next time
+            stateHolder.setState(descriptor, null);
+            throw new IOException("Corrupted update of " + descriptor + ": " + update.getError());
+        }
+        if (isUnchanged(descriptor, update.getChecksum())) {
+            LOGGER.info("===== Checksum of {} matches local database; skipping update =====", descriptor);
+            stateHolder.setState(descriptor, update.getNewClientState());
+            applied = true;
+        } else if (update.getResponseType() == ListUpdateResponse.ResponseType.FULL_UPDATE) {
+            LOGGER.info("===== Applying FULL update for {} =====", descriptor);
+            List<byte[]> updatedHashes = update.getAdditions();
+            ListDigest digest = updatedHashes.isEmpty() ? null : ListDigest.of(updatedHashes);
+            applied = verifyAndSave(digest, update, () -> localDatabase.replace(descriptor, updatedHashes));
+        } else if (update.getResponseType() == ListUpdateResponse.ResponseType.PARTIAL_UPDATE) {
+            LOGGER.info("===== Applying PARTIAL update for {} =====", descriptor);
+            List<byte[]> removed = new ArrayList<>();
+            List<byte[]> added = update.getAdditions();
+            ListDigest digest = doPartialUpdate(update, removed);
+            applied = verifyAndSave(digest, update, () -> localDatabase.update(descriptor, removed, added));
+        } else {
+            LOGGER.warn("Unknown response type: {}", update.getResponseType());
         }
-        return counter.get();
+        LOGGER.info("");
+        return applied;
     }
 
     /**
-     * Applies list update to local database.
+     * Applies list update to the hash prefixes of local database. Local database itself is not modified; removed hash
+     * prefixes are collected so that only the diff is written once the result is verified.
+     * <p>
+     * Current hash prefixes are streamed from local database in a single pass. Removed indices and added hash prefixes
+     * are merged into the stream on the fly and the resulting list is digested without being materialized.
      *
-     * @param updateResponse update to apply
-     * @return list of updated hash prefixes; if no updates are applied empty list is returned
+     * @param update update to apply; its additions are sorted in lexicographic order
+     * @param removed list to collect removed hash prefixes
+     * @return digest of the updated list; {@code null} if there are no updates to apply
      * @throws IOException when database access errors occur
      */
-    private List<String> doPartialUpdate(ListUpdateResponse updateResponse) throws IOException {
-        final List<ThreatEntrySet> empty = Collections.emptyList();
-        List<ThreatEntrySet> removals = Optional.ofNullable(updateResponse.getRemovals()).orElse(empty);
-        List<ThreatEntrySet> additions = Optional.ofNullable(updateResponse.getAdditions()).orElse(empty);
-        if (removals.isEmpty() && additions.isEmpty()) {
-            return Collections.emptyList();
+    private ListDigest doPartialUpdate(ListUpdate update, List<byte[]> removed) throws IOException {
+        if (update.isEmpty()) {
+            return null;
         }
 
-        ThreatListDescriptor descriptor = makeDescriptor(updateResponse);
-        List<String> hashes = localDatabase.load(descriptor);
-
-        for (ThreatEntrySet removal : removals) {
-            if (removal.getCompressionType() == CompressionType.RICE && removal.getRiceIndices() != null) {
-                removeItemsByRiceIndices(removal.getRiceIndices(), hashes);
-            } else if (removal.getCompressionType() == CompressionType.RAW && removal.getRawIndices() != null) {
-                removeItemsByRawIndices(removal.getRawIndices().getIndices(), hashes);
-            }
-        }
-        for (ThreatEntrySet addition : additions) {
-            if (addition.getCompressionType() == CompressionType.RICE && addition.getRiceHashes() != null) {
-                addItemsByRiceHashes(addition.getRiceHashes(), hashes);
-            } else if (addition.getCompressionType() == CompressionType.RAW && addition.getRawHashes() != null) {
-                addItemsByRawHashes(addition.getRawHashes(), hashes);
+        int[] sortedIndices = update.getRemovalIndices();
+        List<byte[]> added = update.getAdditions();
+        Collections.sort(added, HashPrefixes.LEXICOGRAPHIC_ORDER);
+
+        ListDigest digest = new ListDigest();
+        try (PrefixCursor cursor = localDatabase.cursor(update.getDescriptor())) {
+            int nextIndex = 0;
+            int nextAdded = 0;
+            for (int index = 0; cursor.next(); index++) {
+                byte[] hash = cursor.current();
+                if (nextIndex < sortedIndices.length && sortedIndices[nextIndex] == index) {
+                    removed.add(hash.clone());
+                    nextIndex++;
+                    continue;
+                }
+                while (nextAdded < added.size() && HashPrefixes.compare(added.get(nextAdded), hash) < 0) {
+                    digest.accept(added.get(nextAdded++));
+                }
+                digest.accept(hash);
             }
-        }
-        return hashes;
-    }
-
-    private List<String> doFullUpdate(ListUpdateResponse updateResponse) {
-        List<String> hashes = new LinkedList<>();
-        for (ThreatEntrySet addition : updateResponse.getAdditions()) {
-            if (addition.getCompressionType() == CompressionType.RICE) {
-                addItemsByRiceHashes(addition.getRiceHashes(), hashes);
-            } else if (addition.getCompressionType() == CompressionType.RAW) {
-                addItemsByRawHashes(addition.getRawHashes(), hashes);
+            for (; nextAdded < added.size(); nextAdded++) {
+                digest.accept(added.get(nextAdded));
             }
         }
-        return hashes;
+        LOGGER.info("Removed {} prefixes", removed.size());
+        return digest;
     }
 
-    private void verifyAndSave(List<String> hashes, ListUpdateResponse updateResponse, AtomicInteger counter) throws IOException {
-        if (!hashes.isEmpty()) {
-            ThreatListDescriptor descriptor = makeDescriptor(updateResponse);
-            boolean verified = sortAndVerify(hashes, updateResponse.getChecksum());
-            if (verified) {
-                LOGGER.info("Client state SUCCESSFULLY verified for {}", descriptor);
-                localDatabase.clear(descriptor);
-                localDatabase.persist(descriptor, hashes);
-                stateHolder.setState(descriptor, updateResponse.getNewClientState());
-                counter.incrementAndGet();
-            } else {
-                LOGGER.info("FAILED to verify client state for {}", descriptor);
-                // protocol says to clean local database and send update request again
-                // but we keep local database until next successful update
-                stateHolder.setState(descriptor, null);
-            }
-        } else {
+    private boolean verifyAndSave(ListDigest digest, ListUpdate update, DatabaseWrite write) throws IOException {
+        if (digest == null) {
             LOGGER.info("No changes applied. Skipping.");
-            counter.incrementAndGet();
-        }
-    }
-
-    private ThreatListDescriptor makeDescriptor(ListUpdateResponse updateResponse) {
-        ThreatListDescriptor descriptor = new ThreatListDescriptor();
-        descriptor.setThreatType(updateResponse.getThreatType());
-        descriptor.setPlatformType(updateResponse.getPlatformType());
-        descriptor.setThreatEntryType(updateResponse.getThreatEntryType());
-        return descriptor;
-    }
-
-    /**
-     * Removes items from a list by indices given in another list.
-     * <p>
-     * This is an optimized implementation for all standard implementations of {@link List}. To be precise: (1)
-     * implementation of indices list does not have any effect on the performance of this method; (2) for target list,
-     * if it is a linked list then this method will perform at its utmost performance, if it is an array list then this
-     * method will perform just like a straightforward implementation where items are removed from the end (there is no
-     * better way for array lists).
-     *
-     * @param indices list of indices to be removed (implementation of list does not matter)
-     * @param hashes target list from which items are to be removed (linked list will perform best)
-     */
-    private void removeItemsByRawIndices(List<Integer> indices, List<String> hashes) {
-        int removed = 0;
-        Set<Integer> indicesToRemove = new HashSet<>(indices);
-
-        Collections.sort(hashes);
-        ListIterator<String> it = hashes.listIterator(hashes.size());
-        while (it.hasPrevious() && removed < indicesToRemove.size()) {
-            if (indicesToRemove.contains(it.previousIndex())) {
-                it.previous();
-                it.remove();
-                removed++;
-            } else {
-                it.previous();
-            }
+            return true;
         }
-        LOGGER.info("Removed {} prefixes", removed);
-    }
-
-    private void removeItemsByRiceIndices(ThreatEntrySet.RiceDeltaEncoding riceIndices, List<String> hashes) {
-        LOGGER.info("Rice first  : {}", riceIndices.getFirstValue());
-        LOGGER.info("Rice param  : {}", riceIndices.getRiceParameter());
-        LOGGER.info("Rice entries: {}", riceIndices.getNumEntries());
-        LOGGER.info("Rice indices: {}", riceIndices.getEncodedData());
-
-        Integer first = riceIndices.getFirstValue() != null ? Integer.parseInt(riceIndices.getFirstValue()) : 0;
-        if (riceIndices.getNumEntries() > 0) {
-            byte[] bytes = Base64.getDecoder().decode(riceIndices.getEncodedData());
-            List<Integer> deltas = riceCompression.decompress(riceIndices.getRiceParameter(), bytes);
-
-            if (deltas.size() == riceIndices.getNumEntries()) {
-                List<Integer> indices = deltas.stream().map(d -> first + d).collect(Collectors.toList());
-                removeItemsByRawIndices(indices, hashes);
-            } else {
-                LOGGER.error("Decompressed indices: {}; expected: {}", deltas.size(), riceIndices.getNumEntries());
+        ThreatListDescriptor descriptor = update.getDescriptor();
+        if (verify(digest, update.getChecksum())) {
+            LOGGER.info("Client state SUCCESSFULLY verified for {}", descriptor);
+            journal.begin(descriptor, stateHolder.getChecksum(descriptor), digest, update.getNewClientState());
+            // histogram is unknown while local database is being written; lookups probe all prefix lengths
+            stateHolder.setListVersion(descriptor, null, null, stateHolder.getState(descriptor));
+            writeLock.lock();
+            try {
+                write.run();
+            } finally {
+                writeLock.unlock();
             }
-        } else if (first < hashes.size()) {
-            hashes.remove(first.intValue());
-        }
-    }
-
-    private void addItemsByRawHashes(ThreatEntrySet.RawHashes rawHashes, List<String> hashes) {
-        // API encodes hashes in base64
-        byte[] bytes = Base64.getDecoder().decode(rawHashes.getRawHashes());
-        int bytesCount = rawHashes.getPrefixSize();
-
-        int added = 0;
-        for (int i = 0; i < bytes.length; i += bytesCount) {
-            byte[] hash = Arrays.copyOfRange(bytes, i, i + bytesCount);
-            hashes.add(Hex.encodeHexString(hash));
-            added++;
+            stateHolder.setListVersion(descriptor, digest.histogram(), digest.checksum(), update.getNewClientState());
+            journal.commit(descriptor);
+            return true;
         }
-        LOGGER.info("Added {} prefixes", added);
+        LOGGER.info("FAILED to verify client state for {}", descriptor);
+        // protocol says to clean local database and send update request again
+        // but we keep local database until next successful update
+        stateHolder.setState(descriptor, null);
+        return false;
     }
 
-    private void addItemsByRiceHashes(ThreatEntrySet.RiceDeltaEncoding riceHashes, List<String> hashes) {
-        LOGGER.info("Rice first  : {}", riceHashes.getFirstValue());
-        LOGGER.info("Rice param  : {}", riceHashes.getRiceParameter());
-        LOGGER.info("Rice entries: {}", riceHashes.getNumEntries());
-        LOGGER.info("Rice hashes : {}", riceHashes.getEncodedData());
-
-        Integer first = riceHashes.getFirstValue() != null ? Integer.parseUnsignedInt(riceHashes.getFirstValue()) : 0;
-        if (riceHashes.getNumEntries() > 0) {
-            byte[] bytes = Base64.getDecoder().decode(riceHashes.getEncodedData());
-            List<Integer> deltas = riceCompression.decompress(riceHashes.getRiceParameter(), bytes);
-            if (deltas.size() == riceHashes.getNumEntries()) {
-                deltas.stream().mapToInt(d -> first + d).forEach(i -> hashes.add(Integer.toHexString(i)));
-            } else {
-                LOGGER.error("Decompressed hashes: {}; expected: {}", deltas.size(), riceHashes.getNumEntries());
-            }
-        } else if (first != 0) {
-            hashes.add(Integer.toHexString(first));
-        }
+    private boolean isUnchanged(ThreatListDescriptor descriptor, ListUpdateResponse.Checksum checksum) {
+        return checksum != null && checksum.getSha256() != null
+            && checksum.getSha256().equals(stateHolder.getChecksum(descriptor));
     }
 
-    private boolean sortAndVerify(List<String> hashes, ListUpdateResponse.Checksum checksum) {
-        // sort hashes in lexicographic order
-        Collections.sort(hashes);
-
+    private boolean verify(ListDigest digest, ListUpdateResponse.Checksum checksum) {
         if (checksum != null && checksum.getSha256() != null) {
-            MessageDigest sha256 = DigestUtils.getSha256Digest();
-            try {
-                for (String hash : hashes) {
-                    byte[] decoded = Hex.decodeHex(hash.toCharArray());
-                    sha256.update(decoded);
-                }
-            } catch (DecoderException ex) {
-                LOGGER.error("Shall not happen", ex);
-            }
-
-            byte[] bytes = sha256.digest();
-            String computed = Base64.getEncoder().encodeToString(bytes);
+            String computed = digest.checksum();
 
             LOGGER.info("Expected checksum: {}", checksum.getSha256());
             LOGGER.info("Computed checksum: {}", computed);
@@ -278,4 +185,13 @@ class UpdateResponseHandler {
         return true;
     }
 
+    /**
+     * Write to local database which is done once an update is verified.
+     */
+    @FunctionalInterface
+    private interface DatabaseWrite {
+
+        void run() throws IOException;
+    }
+
 }
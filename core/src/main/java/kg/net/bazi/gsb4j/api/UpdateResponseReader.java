@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.inject.Inject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import kg.net.bazi.gsb4j.Gsb4jBinding;
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.data.updates.CompressionType;
+import kg.net.bazi.gsb4j.data.updates.ListUpdateResponse;
+import kg.net.bazi.gsb4j.data.updates.ThreatEntrySet;
+import kg.net.bazi.gsb4j.util.RiceCompression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming reader of threat list update responses.
+ * <p>
+ * Response body is read token by token rather than bound to objects as a whole. Each entry set of additions and
+ * removals is decoded as soon as it is read, so at most one encoded entry set is held in memory at a time. Every list
+ * update is passed on once its JSON object is complete, because checksum and new client state follow the entry sets.
+ *
+ * @author azilet
+ */
+class UpdateResponseReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpdateResponseReader.class);
+
+    @Inject
+    @Gsb4jBinding
+    Gson gson;
+
+    @Inject
+    RiceCompression riceCompression;
+
+    /**
+     * Reads a response of threat list updates.
+     *
+     * @param reader reader of response body
+     * @param consumer consumer of list updates; it is called once per threat list in the order of the response
+     * @return minimum wait duration of the response; {@code null} if not set
+     * @throws IOException when read errors occur or consumer fails
+     */
+    String read(Reader reader, ListUpdateConsumer consumer) throws IOException {
+        try {
+            return read(gson.newJsonReader(reader), consumer);
+        } catch (JsonParseException ex) {
+            throw new IOException("Malformed list update response", ex);
+        }
+    }
+
+    private String read(JsonReader json, ListUpdateConsumer consumer) throws IOException {
+        String minimumWaitDuration = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "listUpdateResponses":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        consumer.accept(readListUpdate(json));
+                    }
+                    json.endArray();
+                    break;
+                case "minimumWaitDuration":
+                    minimumWaitDuration = gson.fromJson(json, String.class);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return minimumWaitDuration;
+    }
+
+    private ListUpdate readListUpdate(JsonReader json) throws IOException {
+        ListUpdate update = new ListUpdate();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "threatType":
+                    update.setThreatType(gson.fromJson(json, ThreatType.class));
+                    break;
+                case "threatEntryType":
+                    update.setThreatEntryType(gson.fromJson(json, ThreatEntryType.class));
+                    break;
+                case "platformType":
+                    update.setPlatformType(gson.fromJson(json, PlatformType.class));
+                    break;
+                case "responseType":
+                    update.setResponseType(gson.fromJson(json, ListUpdateResponse.ResponseType.class));
+                    break;
+                case "additions":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        addAdditions(gson.fromJson(json, ThreatEntrySet.class), update);
+                    }
+                    json.endArray();
+                    break;
+                case "removals":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        addRemovals(gson.fromJson(json, ThreatEntrySet.class), update);
+                    }
+                    json.endArray();
+                    break;
+                case "newClientState":
+                    update.setNewClientState(gson.fromJson(json, String.class));
+                    break;
+                case "checksum":
+                    update.setChecksum(gson.fromJson(json, ListUpdateResponse.Checksum.class));
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return update;
+    }
+
+    private void addAdditions(ThreatEntrySet addition, ListUpdate update) {
+        if (addition == null) {
+            return;
+        }
+        if (addition.getCompressionType() == CompressionType.RICE && addition.getRiceHashes() != null) {
+            addItemsByRiceHashes(addition.getRiceHashes(), update);
+        } else if (addition.getCompressionType() == CompressionType.RAW && addition.getRawHashes() != null) {
+            addItemsByRawHashes(addition.getRawHashes(), update.getAdditions());
+        }
+    }
+
+    private void addRemovals(ThreatEntrySet removal, ListUpdate update) {
+        if (removal == null) {
+            return;
+        }
+        if (removal.getCompressionType() == CompressionType.RICE && removal.getRiceIndices() != null) {
+            update.addRemovals(decodeRice(removal.getRiceIndices(), update));
+        } else if (removal.getCompressionType() == CompressionType.RAW && removal.getRawIndices() != null
+            && removal.getRawIndices().getIndices() != null) {
+            update.addRemovals(removal.getRawIndices().getIndices().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    private void addItemsByRawHashes(ThreatEntrySet.RawHashes rawHashes, List<byte[]> hashes) {
+        // API encodes hashes in base64
+        byte[] bytes = Base64.getDecoder().decode(rawHashes.getRawHashes());
+        int bytesCount = rawHashes.getPrefixSize();
+
+        int added = 0;
+        for (int i = 0; i < bytes.length; i += bytesCount) {
+            hashes.add(Arrays.copyOfRange(bytes, i, i + bytesCount));
+            added++;
+        }
+        LOGGER.info("Added {} prefixes", added);
+    }
+
+    private void addItemsByRiceHashes(ThreatEntrySet.RiceDeltaEncoding riceHashes, ListUpdate update) {
+        int[] values = decodeRice(riceHashes, update);
+        for (int value : values) {
+            update.getAdditions().add(toBytes(value));
+        }
+        LOGGER.info("Added {} prefixes", values.length);
+    }
+
+    private int[] decodeRice(ThreatEntrySet.RiceDeltaEncoding encoding, ListUpdate update) {
+        LOGGER.info("Rice first  : {}", encoding.getFirstValue());
+        LOGGER.info("Rice param  : {}", encoding.getRiceParameter());
+        LOGGER.info("Rice entries: {}", encoding.getNumEntries());
+
+        // first value is a 64-bit integer in JSON; the values themselves are 4-byte unsigned integers
+        int first = encoding.getFirstValue() != null ? (int) Long.parseLong(encoding.getFirstValue()) : 0;
+        String encodedData = encoding.getEncodedData();
+        byte[] bytes = encodedData != null ? Base64.getDecoder().decode(encodedData) : new byte[0];
+        try {
+            return riceCompression.decode(first, encoding.getRiceParameter(), encoding.getNumEntries(), bytes);
+        } catch (IllegalArgumentException ex) {
+            // the rest of the response may still be valid; update is marked so that it is not applied
+            LOGGER.error("Failed to decode Rice coded data: {}", ex.getMessage());
+            update.setError("Failed to decode Rice coded data: " + ex.getMessage());
+            return new int[0];
+        }
+    }
+
+    private static byte[] toBytes(int hash) {
+        // Rice coded hash prefixes are little-endian integers
+        return ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(hash).array();
+    }
+
+    /**
+     * Consumer of list updates read from a response.
+     */
+    @FunctionalInterface
+    interface ListUpdateConsumer {
+
+        void accept(ListUpdate update) throws IOException;
+    }
+
+}
@@ -31,9 +31,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import kg.net.bazi.gsb4j.api.ThreatListGetter;
 import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
 
 /**
- * Holds currently available threat list descriptors. Updated on every update request to API.
+ * Holds currently available threat list descriptors. Updated on every update request to API. Only threat lists
+ * selected by {@code lists.include} and {@code lists.exclude} configuration properties are held, so lists that are not
+ * selected are neither updated nor looked up.
  *
  * @author azilet
  */
@@ -46,6 +49,13 @@ public class ThreatListDescriptorsCache {
     private final Set<ThreatListDescriptor> cache = new HashSet<>();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    ThreatListFilter filter = ThreatListFilter.ALL;
+
+    @Inject
+    void setProperties(Gsb4jProperties properties) {
+        filter = ThreatListFilter.parse(properties.getIncludedLists(), properties.getExcludedLists());
+    }
+
     /**
      * Gets cached threat list descriptors.
      *
@@ -64,6 +74,22 @@ public class ThreatListDescriptorsCache {
         return getRefreshed();
     }
 
+    /**
+     * Fills the cache with known threat list descriptors, for example the ones restored from a snapshot. Descriptors
+     * are not fetched from API until the cache is refreshed.
+     *
+     * @param descriptors descriptors to put into the cache
+     */
+    public void seed(Collection<ThreatListDescriptor> descriptors) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            descriptors.stream().filter(filter::test).forEach(cache::add);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /**
      * Gets threat list descriptors first refreshing the cache.
      *
@@ -77,7 +103,7 @@ public class ThreatListDescriptorsCache {
         writeLock.lock();
         try {
             cache.clear();
-            cache.addAll(ls);
+            ls.stream().filter(filter::test).forEach(cache::add);
             return Collections.unmodifiableCollection(new HashSet<>(cache));
         } finally {
             writeLock.unlock();
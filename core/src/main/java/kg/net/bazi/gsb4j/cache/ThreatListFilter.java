@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Selects threat lists by threat type and platform type. A list is selected if it matches any of the included
+ * patterns and none of the excluded ones. Patterns are in the form of {@code THREAT_TYPE/PLATFORM_TYPE} where either
+ * part may be {@code *}; a pattern without platform type matches all platform types.
+ *
+ * @author azilet
+ */
+final class ThreatListFilter {
+
+    static final ThreatListFilter ALL = new ThreatListFilter(null, Collections.emptyList());
+
+    private static final String WILDCARD = "*";
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    private ThreatListFilter(List<Pattern> includes, List<Pattern> excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Makes a filter out of comma separated patterns.
+     *
+     * @param include included patterns; {@code null} or blank to include all lists
+     * @param exclude excluded patterns; {@code null} or blank to exclude none
+     * @return filter
+     * @throws IllegalArgumentException if a pattern names unknown threat type or platform type
+     */
+    static ThreatListFilter parse(String include, String exclude) {
+        List<Pattern> includes = StringUtils.isBlank(include) ? null : parsePatterns(include);
+        List<Pattern> excludes = StringUtils.isBlank(exclude) ? Collections.emptyList() : parsePatterns(exclude);
+        return new ThreatListFilter(includes, excludes);
+    }
+
+    /**
+     * Checks if threat list is selected by this filter.
+     *
+     * @param descriptor descriptor of threat list
+     * @return {@code true} if list is selected; {@code false} otherwise
+     */
+    boolean test(ThreatListDescriptor descriptor) {
+        if (includes != null && includes.stream().noneMatch(p -> p.matches(descriptor))) {
+            return false;
+        }
+        return excludes.stream().noneMatch(p -> p.matches(descriptor));
+    }
+
+    private static List<Pattern> parsePatterns(String value) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String s : value.split(",")) {
+            String[] parts = s.trim().split("/", -1);
+            if (parts.length > 2 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("Invalid threat list pattern: " + s);
+            }
+            ThreatType threatType = parts[0].equals(WILDCARD) ? null : ThreatType.valueOf(parts[0]);
+            PlatformType platformType = parts.length == 1 || parts[1].equals(WILDCARD)
+                ? null : PlatformType.valueOf(parts[1]);
+            patterns.add(new Pattern(threatType, platformType));
+        }
+        return patterns;
+    }
+
+    private static class Pattern {
+
+        private final ThreatType threatType;
+        private final PlatformType platformType;
+
+        Pattern(ThreatType threatType, PlatformType platformType) {
+            this.threatType = threatType;
+            this.platformType = platformType;
+        }
+
+        boolean matches(ThreatListDescriptor descriptor) {
+            return (threatType == null || threatType == descriptor.getThreatType())
+                && (platformType == null || platformType == descriptor.getPlatformType());
+        }
+    }
+
+}
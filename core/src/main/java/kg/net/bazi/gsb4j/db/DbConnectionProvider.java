@@ -25,6 +25,7 @@ import com.zaxxer.hikari.HikariDataSource;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
@@ -32,14 +33,26 @@ import javax.sql.DataSource;
 import kg.net.bazi.gsb4j.Gsb4j;
 import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
 import org.sqlite.JDBC;
+import org.sqlite.SQLiteConfig;
 
 /**
- * Data source provider for SQL local database.
+ * Data source provider for writes to SQL local database.
+ * <p>
+ * SQLite allows a single writer at a time, so writes go through a dedicated pool which has a single connection by
+ * default. The database runs in WAL mode, so lookups served by the read-only pool of {@link DbReadConnectionProvider}
+ * are not blocked by update transactions.
  *
  * @author azilet
  */
 class DbConnectionProvider implements Provider<DataSource> {
 
+    static final String DB_FILE_NAME = "local.db";
+
+    /**
+     * Page cache size of each connection. Negative value tells SQLite that it is in KiB rather than in pages.
+     */
+    private static final int CACHE_SIZE_KIB = -64 * 1024;
+
     private DataSource dataSource;
 
     @Inject
@@ -53,21 +66,53 @@ class DbConnectionProvider implements Provider<DataSource> {
             }
         }
 
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(JDBC.PREFIX + dataDir.resolve("local.db"));
-        config.setPoolName(Gsb4j.GSB4J);
+        HikariConfig config = makeConfig(dataDir, makeSqliteConfig());
+        config.setPoolName(Gsb4j.GSB4J + "-writer");
         config.setAutoCommit(false);
-        config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(20));
-        config.setIdleTimeout(TimeUnit.MINUTES.toMillis(10));
-        config.setMaxLifetime(TimeUnit.MINUTES.toMillis(30));
-        config.setMinimumIdle(4);
-        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(properties.getDatabaseWriterPoolSize());
 
         this.dataSource = new HikariDataSource(config);
+        try {
+            SqlSchemaMigration.migrate(dataSource);
+        } catch (SQLException ex) {
+            throw new ProvisionException("Failed to migrate database schema", ex);
+        }
     }
 
     @Override
     public DataSource get() {
         return dataSource;
     }
+
+    /**
+     * Makes SQLite configuration shared by all connections.
+     *
+     * @return SQLite configuration
+     */
+    static SQLiteConfig makeSqliteConfig() {
+        // WAL lets lookups read while updates are being written; NORMAL synchronization is safe in WAL mode
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        sqliteConfig.setCacheSize(CACHE_SIZE_KIB);
+        return sqliteConfig;
+    }
+
+    /**
+     * Makes connection pool configuration shared by all pools.
+     *
+     * @param dataDir data directory where database file resides
+     * @param sqliteConfig SQLite configuration of connections
+     * @return pool configuration
+     */
+    static HikariConfig makeConfig(Path dataDir, SQLiteConfig sqliteConfig) {
+        HikariConfig config = new HikariConfig();
+        config.setDataSourceProperties(sqliteConfig.toProperties());
+        config.setJdbcUrl(JDBC.PREFIX + dataDir.resolve(DB_FILE_NAME));
+        config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(20));
+        config.setIdleTimeout(TimeUnit.MINUTES.toMillis(10));
+        config.setMaxLifetime(TimeUnit.MINUTES.toMillis(30));
+        return config;
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+
+import kg.net.bazi.gsb4j.Gsb4j;
+import kg.net.bazi.gsb4j.Gsb4jBinding;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Data source provider for lookups in SQL local database.
+ * <p>
+ * Connections of this pool are in autocommit mode, so every query reads the latest committed version of the database
+ * and no read transaction is left open between lookups. Connections refuse to modify the database and read database
+ * pages through memory mapping.
+ *
+ * @author azilet
+ */
+class DbReadConnectionProvider implements Provider<DataSource> {
+
+    /**
+     * Max number of bytes of the database file read through memory mapping.
+     */
+    private static final long MMAP_SIZE = 256L * 1024 * 1024;
+
+    private final DataSource dataSource;
+
+    /**
+     * Constructor. Writer data source is injected to make sure the database is created and migrated before any
+     * read-only connection is opened.
+     *
+     * @param properties configuration properties
+     * @param writer data source for writes
+     */
+    @Inject
+    DbReadConnectionProvider(Gsb4jProperties properties, @Gsb4jBinding DataSource writer) {
+        SQLiteConfig sqliteConfig = DbConnectionProvider.makeSqliteConfig();
+        sqliteConfig.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(MMAP_SIZE));
+
+        HikariConfig config = DbConnectionProvider.makeConfig(properties.getDataDirectory(), sqliteConfig);
+        config.setPoolName(Gsb4j.GSB4J + "-reader");
+        config.setAutoCommit(true);
+        config.setConnectionInitSql("PRAGMA query_only = 1");
+        config.setMinimumIdle(Math.min(4, properties.getDatabaseReaderPoolSize()));
+        config.setMaximumPoolSize(properties.getDatabaseReaderPoolSize());
+
+        this.dataSource = new HikariDataSource(config);
+    }
+
+    @Override
+    public DataSource get() {
+        return dataSource;
+    }
+}
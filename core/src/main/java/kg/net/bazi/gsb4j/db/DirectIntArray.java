@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Set of 4-byte prefixes kept as a sorted array in a direct buffer outside of the Java heap.
+ * <p>
+ * Each version of a threat list gets its own buffer which is never modified after it is filled, so concurrent lookups
+ * need no synchronization. Heap holds only this small wrapper no matter how big the list is. New versions are made with
+ * an {@link #appender(int) appender} which writes values straight to the buffer.
+ * <p>
+ * Buffers are not freed explicitly because lookups may still read a replaced version. Native memory of a buffer is
+ * released only when garbage collector reclaims the buffer, so {@code -XX:MaxDirectMemorySize} has to leave room for at
+ * least two versions of every threat list, which is 8 bytes per prefix.
+ *
+ * @author azilet
+ */
+final class DirectIntArray implements ShortPrefixSet {
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /**
+     * Constructs a new set by copying values to a direct buffer.
+     *
+     * @param values sorted distinct values
+     */
+    DirectIntArray(int[] values) {
+        this.size = values.length;
+        this.buffer = ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder());
+        buffer.asIntBuffer().put(values);
+    }
+
+    private DirectIntArray(ByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Makes an appender that writes values straight to a new direct buffer.
+     *
+     * @param capacity max number of values to append
+     * @return appender of values
+     */
+    static ShortPrefixSet.Appender appender(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        return new ShortPrefixSet.Appender() {
+            private int count;
+
+            @Override
+            public void add(int value) {
+                buffer.putInt(count++ * Integer.BYTES, value);
+            }
+
+            @Override
+            public ShortPrefixSet build() {
+                return new DirectIntArray(buffer, count);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int search(int key, int fromIndex) {
+        int low = fromIndex;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = buffer.getInt(mid * Integer.BYTES);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] values = new int[size];
+        buffer.asIntBuffer().get(values);
+        return values;
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return buffer.getInt(index++ * Integer.BYTES);
+            }
+        };
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link LocalDatabase} that puts a Bloom filter of each threat list in front of another local
+ * database.
+ * <p>
+ * Vast majority of looked up URLs are not in any of the threat lists. Such lookups are answered by filters alone and
+ * only hashes that pass filters reach the underlying database. Filters are published through {@link ListSnapshots}
+ * just like indices of {@link MemoryLocalDatabase}.
+ * <p>
+ * Full updates build filters out of the written hashes. Partial updates copy the current filter and add only the
+ * additions; bits of removed hashes stay in the filter. Once a filter holds twice as many hashes as it is sized for, it
+ * is rebuilt by streaming the list through {@link LocalDatabase#cursor}. Threat lists are never loaded in whole.
+ *
+ * @author azilet
+ */
+class FilteredLocalDatabase implements LocalDatabase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilteredLocalDatabase.class);
+
+    private final LocalDatabase delegate;
+    private final double falsePositiveRate;
+    private final int maxBytes;
+
+    private final ListSnapshots<PrefixFilter> filters = new ListSnapshots<>();
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Constructor.
+     *
+     * @param delegate local database to filter lookups for
+     * @param falsePositiveRate desired false positive rate of filters
+     * @param maxBytes max size of a single filter in bytes
+     */
+    FilteredLocalDatabase(LocalDatabase delegate, double falsePositiveRate, int maxBytes) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate shall be between 0 and 1: " + falsePositiveRate);
+        }
+        this.delegate = delegate;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public List<byte[]> load(ThreatListDescriptor descriptor) throws IOException {
+        return delegate.load(descriptor);
+    }
+
+    @Override
+    public PrefixCursor cursor(ThreatListDescriptor descriptor) throws IOException {
+        return delegate.cursor(descriptor);
+    }
+
+    @Override
+    public void persist(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        lock.lock();
+        try {
+            delegate.persist(descriptor, hashes);
+            publishAdditions(descriptor, hashes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(byte[] hash, ThreatListDescriptor descriptor) throws IOException {
+        return getFilter(descriptor).mightContain(PrefixIndex.check(hash)) && delegate.contains(hash, descriptor);
+    }
+
+    @Override
+    public Map<ThreatListDescriptor, List<byte[]>> findMatches(Collection<byte[]> hashes,
+        Collection<ThreatListDescriptor> descriptors) throws IOException {
+        Set<byte[]> candidates = new LinkedHashSet<>();
+        List<ThreatListDescriptor> candidateLists = new ArrayList<>();
+        for (ThreatListDescriptor descriptor : descriptors) {
+            PrefixFilter filter = getFilter(descriptor);
+            boolean hit = false;
+            for (byte[] hash : hashes) {
+                if (filter.mightContain(PrefixIndex.check(hash))) {
+                    candidates.add(hash);
+                    hit = true;
+                }
+            }
+            if (hit) {
+                candidateLists.add(descriptor);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // filters have no false negatives, so a list cannot have a hit among hashes that did not pass its filter
+        return delegate.findMatches(candidates, candidateLists);
+    }
+
+    @Override
+    public void clear(ThreatListDescriptor descriptor) throws IOException {
+        lock.lock();
+        try {
+            delegate.clear(descriptor);
+            filters.publish(descriptor, PrefixFilter.EMPTY);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void replace(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        lock.lock();
+        try {
+            delegate.replace(descriptor, hashes);
+            publish(descriptor, hashes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void update(ThreatListDescriptor descriptor, List<byte[]> removals, List<byte[]> additions)
+        throws IOException {
+        lock.lock();
+        try {
+            delegate.update(descriptor, removals, additions);
+            // Bloom filters do not support removals
+            publishAdditions(descriptor, additions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PrefixFilter publish(ThreatListDescriptor descriptor, List<byte[]> hashes) {
+        PrefixFilter filter = PrefixFilter.build(hashes, falsePositiveRate, maxBytes);
+        filters.publish(descriptor, filter);
+        LOGGER.info("Filter of {} built with {} prefixes in {} bytes", descriptor, hashes.size(),
+            filter.sizeInBytes());
+        return filter;
+    }
+
+    private void publishAdditions(ThreatListDescriptor descriptor, List<byte[]> additions) throws IOException {
+        PrefixFilter filter = filters.get(descriptor);
+        if (filter == null) {
+            // filter is built on first lookup
+            return;
+        }
+        filter = filter.with(additions);
+        if (filter.isOverfilled()) {
+            publishFromCursor(descriptor);
+        } else {
+            filters.publish(descriptor, filter);
+        }
+    }
+
+    private PrefixFilter publishFromCursor(ThreatListDescriptor descriptor) throws IOException {
+        int count = 0;
+        try (PrefixCursor cursor = delegate.cursor(descriptor)) {
+            while (cursor.next()) {
+                count++;
+            }
+        }
+        PrefixFilter filter;
+        try (PrefixCursor cursor = delegate.cursor(descriptor)) {
+            filter = PrefixFilter.build(count, cursor, falsePositiveRate, maxBytes);
+        }
+        filters.publish(descriptor, filter);
+        LOGGER.info("Filter of {} built with {} prefixes in {} bytes", descriptor, count, filter.sizeInBytes());
+        return filter;
+    }
+
+    private PrefixFilter getFilter(ThreatListDescriptor descriptor) throws IOException {
+        PrefixFilter filter = filters.get(descriptor);
+        if (filter != null) {
+            return filter;
+        }
+        lock.lock();
+        try {
+            filter = filters.get(descriptor);
+            if (filter == null) {
+                filter = publishFromCursor(descriptor);
+            }
+            return filter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+
+/**
+ * Immutable per threat list values published through an atomic reference.
+ * <p>
+ * Every change makes a new copy of the map of threat lists and atomically swaps it with the current one. Readers take
+ * the current map without any locking and keep working with it even if a newer version is published meanwhile. Since
+ * values are supposed to be immutable, readers always see complete versions of threat lists. Threat lists change rarely
+ * and there are only a few of them, so copying the map on every change is cheap.
+ *
+ * @param <V> type of the values kept for each threat list
+ * @author azilet
+ */
+final class ListSnapshots<V> {
+
+    private final AtomicReference<Map<ThreatListDescriptor, V>> current
+        = new AtomicReference<>(Collections.emptyMap());
+
+    /**
+     * Gets current snapshot of all threat lists.
+     *
+     * @return unmodifiable map of threat lists to their values
+     */
+    Map<ThreatListDescriptor, V> get() {
+        return current.get();
+    }
+
+    /**
+     * Gets current value of a threat list.
+     *
+     * @param descriptor threat list descriptor
+     * @return current value; {@code null} if nothing is published for the threat list yet
+     */
+    V get(ThreatListDescriptor descriptor) {
+        return current.get().get(descriptor);
+    }
+
+    /**
+     * Publishes a new value of a threat list. Values of other threat lists stay as they are.
+     *
+     * @param descriptor threat list descriptor
+     * @param value new value of the threat list
+     */
+    void publish(ThreatListDescriptor descriptor, V value) {
+        current.updateAndGet(map -> {
+            Map<ThreatListDescriptor, V> copy = new HashMap<>(map);
+            copy.put(descriptor, value);
+            return Collections.unmodifiableMap(copy);
+        });
+    }
+
+}
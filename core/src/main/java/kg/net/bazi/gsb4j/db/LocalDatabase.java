@@ -17,7 +17,14 @@
 package kg.net.bazi.gsb4j.db;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
 
@@ -32,30 +39,67 @@ public interface LocalDatabase {
      * Loads hashes for the threat list descriptor.
      *
      * @param descriptor descriptor to load hashes for
-     * @return hashes for the descriptor
+     * @return raw hash prefixes for the descriptor in lexicographic order
      * @throws IOException when I/O errors occur
      */
-    List<String> load(ThreatListDescriptor descriptor) throws IOException;
+    List<byte[]> load(ThreatListDescriptor descriptor) throws IOException;
+
+    /**
+     * Opens a cursor over hashes of the threat list descriptor. Unlike {@link #load(ThreatListDescriptor)}, cursors are
+     * supposed to stream hashes without materializing the whole threat list. Default implementation loads all hashes.
+     *
+     * @param descriptor descriptor to read hashes for
+     * @return cursor over raw hash prefixes for the descriptor in lexicographic order; shall be closed after use
+     * @throws IOException when I/O errors occur
+     */
+    default PrefixCursor cursor(ThreatListDescriptor descriptor) throws IOException {
+        return PrefixCursor.of(load(descriptor));
+    }
 
     /**
      * Saves hashes for the threat list descriptor.
      *
      * @param descriptor descriptor for the threat list hashes
-     * @param hashes hashes to save
+     * @param hashes raw hash prefixes to save
      * @throws IOException when I/O errors occur
      */
-    void persist(ThreatListDescriptor descriptor, List<String> hashes) throws IOException;
+    void persist(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException;
 
     /**
      * Checks if the hash exists in the local database for the supplied descriptor.
      *
-     * @param hash hash prefix to check
+     * @param hash raw hash prefix to check
      * @param descriptor descriptor to look in
      * @return {@code true} if hash exists in the local database; {@code false} otherwise
      *
      * @throws IOException when IO errors occur
      */
-    boolean contains(String hash, ThreatListDescriptor descriptor) throws IOException;
+    boolean contains(byte[] hash, ThreatListDescriptor descriptor) throws IOException;
+
+    /**
+     * Finds which of the supplied hashes exist in the local database for each of the supplied descriptors. This is a
+     * bulk version of {@link #contains(byte[], kg.net.bazi.gsb4j.data.ThreatListDescriptor)} which is
+     * supposed to check all hash prefixes of a URL, or even of several URLs, at once. Default implementation calls
+     * {@code contains} for each pair of hash and descriptor.
+     *
+     * @param hashes raw hash prefixes to check
+     * @param descriptors descriptors to look in
+     * @return map of descriptors to hashes found in their lists; descriptors without any hits are not included;
+     * returned hashes are the same array instances as supplied ones
+     * @throws IOException when I/O errors occur
+     */
+    default Map<ThreatListDescriptor, List<byte[]>> findMatches(Collection<byte[]> hashes,
+        Collection<ThreatListDescriptor> descriptors) throws IOException {
+        Map<ThreatListDescriptor, List<byte[]>> matches = new HashMap<>();
+        for (ThreatListDescriptor descriptor : descriptors) {
+            for (byte[] hash : hashes) {
+                if (contains(hash, descriptor)) {
+                    matches.computeIfAbsent(descriptor, d -> new ArrayList<>()).add(hash);
+                }
+            }
+        }
+        return matches;
+    }
 
     /**
      * Clears local database data for the descriptor.
@@ -65,4 +109,44 @@ public interface LocalDatabase {
      */
     void clear(ThreatListDescriptor descriptor) throws IOException;
 
+    /**
+     * Applies a diff to the hashes of the threat list descriptor: removes and adds supplied hashes. Implementations
+     * are supposed to touch only the hashes in the diff, so that the cost of an update depends on the size of the diff
+     * rather than the size of the threat list, and to apply the diff atomically. Default implementation loads all
+     * hashes, applies the diff and replaces the hashes.
+     *
+     * @param descriptor descriptor for the threat list hashes
+     * @param removals raw hash prefixes to remove
+     * @param additions raw hash prefixes to add
+     * @throws IOException when I/O errors occur
+     */
+    default void update(ThreatListDescriptor descriptor, List<byte[]> removals, List<byte[]> additions)
+        throws IOException {
+        Set<ByteBuffer> removed = new HashSet<>();
+        removals.forEach(h -> removed.add(ByteBuffer.wrap(h)));
+
+        List<byte[]> hashes = new ArrayList<>();
+        for (byte[] hash : load(descriptor)) {
+            if (!removed.contains(ByteBuffer.wrap(hash))) {
+                hashes.add(hash);
+            }
+        }
+        hashes.addAll(additions);
+        replace(descriptor, hashes);
+    }
+
+    /**
+     * Replaces all hashes of the threat list descriptor with supplied ones. Implementations are encouraged to make the
+     * replacement atomic so that lookups see either old or new hashes. Default implementation clears local data of the
+     * descriptor and then persists new hashes.
+     *
+     * @param descriptor descriptor for the threat list hashes
+     * @param hashes new raw hash prefixes of the threat list
+     * @throws IOException when I/O errors occur
+     */
+    default void replace(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        clear(descriptor);
+        persist(descriptor, hashes);
+    }
+
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.google.inject.Injector;
+
+/**
+ * Service provider interface of local database backends used by Update API.
+ * <p>
+ * Backends are discovered by {@link java.util.ServiceLoader}: implementations shall have a public no-argument
+ * constructor and be listed in {@code META-INF/services/kg.net.bazi.gsb4j.db.LocalDatabaseBackend} file of their jar.
+ * Backend to use is selected by its name in {@code db.backend} configuration property.
+ *
+ * @author azilet
+ */
+public interface LocalDatabaseBackend {
+
+    /**
+     * Gets name of the backend which is used to select the backend in configuration.
+     *
+     * @return backend name
+     */
+    String getName();
+
+    /**
+     * Creates local database of this backend. This method is called once per Gsb4j instance.
+     *
+     * @param injector Gsb4j injector which can be used to get configuration and other dependencies
+     * @return local database instance
+     */
+    LocalDatabase create(Injector injector);
+
+}
@@ -17,6 +17,7 @@
 package kg.net.bazi.gsb4j.db;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 
 import javax.sql.DataSource;
 
@@ -35,9 +36,11 @@ public class LocalDatabaseModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(LocalDatabase.class).to(SqlLocalDatabase.class);
+        bind(LocalDatabase.class).toProvider(LocalDatabaseProvider.class).in(Singleton.class);
 
         bind(DataSource.class).annotatedWith(Gsb4jBinding.class)
             .toProvider(DbConnectionProvider.class).asEagerSingleton();
+        bind(DataSource.class).annotatedWith(ReadOnly.class)
+            .toProvider(DbReadConnectionProvider.class).asEagerSingleton();
     }
 }
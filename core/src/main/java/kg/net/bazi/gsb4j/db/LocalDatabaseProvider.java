@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provider of the local database implementation selected by the configured backend name. Backends are discovered by
+ * {@link ServiceLoader}, see {@link LocalDatabaseBackend}.
+ *
+ * @author azilet
+ */
+class LocalDatabaseProvider implements Provider<LocalDatabase> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalDatabaseProvider.class);
+
+    private final Injector injector;
+    private final Gsb4jProperties properties;
+    private final String backend;
+
+    @Inject
+    LocalDatabaseProvider(Injector injector, Gsb4jProperties properties) {
+        this.injector = injector;
+        this.properties = properties;
+        this.backend = properties.getDatabaseBackend();
+    }
+
+    @Override
+    public LocalDatabase get() {
+        LOGGER.info("Using local database backend: {}", backend);
+        LocalDatabase localDatabase = getBackend();
+        if (properties.isDatabaseFilterEnabled()) {
+            double falsePositiveRate = properties.getDatabaseFilterFalsePositiveRate();
+            LOGGER.info("Using local database filters with false positive rate {}", falsePositiveRate);
+            try {
+                localDatabase = new FilteredLocalDatabase(localDatabase, falsePositiveRate,
+                    properties.getDatabaseFilterMaxBytes());
+            } catch (IllegalArgumentException ex) {
+                throw new ProvisionException("Invalid local database filter configuration", ex);
+            }
+        }
+        return localDatabase;
+    }
+
+    private LocalDatabase getBackend() {
+        List<String> available = new ArrayList<>();
+        for (LocalDatabaseBackend candidate : ServiceLoader.load(LocalDatabaseBackend.class)) {
+            if (candidate.getName().equals(backend)) {
+                return candidate.create(injector);
+            }
+            available.add(candidate.getName());
+        }
+        throw new ProvisionException("Unknown local database backend: " + backend + ". Available backends: "
+            + String.join(", ", available));
+    }
+
+}
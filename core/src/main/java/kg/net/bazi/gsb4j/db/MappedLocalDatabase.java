@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link LocalDatabase} that keeps hashes of each threat list in a memory mapped binary file in the
+ * data directory. See {@link PrefixFile} for the file format.
+ * <p>
+ * Files are mapped on first access, so restarts do not need to load anything. A mapped file is not reopened until this
+ * instance writes a new version of it, so the data directory must not be updated by other processes; they would keep
+ * serving the version that was mapped first.
+ *
+ * @author azilet
+ */
+@Singleton
+class MappedLocalDatabase implements LocalDatabase {
+
+    static final String FILE_EXTENSION = ".prefixes";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedLocalDatabase.class);
+
+    private final Path directory;
+    private final ListSnapshots<Optional<PrefixFile>> files = new ListSnapshots<>();
+    private final Lock lock = new ReentrantLock();
+
+    @Inject
+    MappedLocalDatabase(Gsb4jProperties properties) {
+        this(properties.getDataDirectory());
+    }
+
+    MappedLocalDatabase(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public List<byte[]> load(ThreatListDescriptor descriptor) throws IOException {
+        Optional<PrefixFile> file = getFile(descriptor);
+        if (!file.isPresent()) {
+            return new ArrayList<>();
+        }
+        List<byte[]> result = file.get().prefixes();
+        LOGGER.info("Loaded {} items", result.size());
+        return result;
+    }
+
+    @Override
+    public PrefixCursor cursor(ThreatListDescriptor descriptor) throws IOException {
+        Optional<PrefixFile> file = getFile(descriptor);
+        return file.isPresent() ? file.get().cursor() : PrefixCursor.of(Collections.emptyList());
+    }
+
+    @Override
+    public void persist(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        lock.lock();
+        try {
+            List<byte[]> all = load(descriptor);
+            all.addAll(hashes);
+            write(descriptor, PrefixIndex.build(all));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(byte[] hash, ThreatListDescriptor descriptor) throws IOException {
+        Optional<PrefixFile> file = getFile(descriptor);
+        return file.isPresent() && file.get().contains(PrefixIndex.check(hash));
+    }
+
+    @Override
+    public Map<ThreatListDescriptor, List<byte[]>> findMatches(Collection<byte[]> hashes,
+        Collection<ThreatListDescriptor> descriptors) throws IOException {
+        PrefixCandidates candidates = new PrefixCandidates(hashes);
+        Map<ThreatListDescriptor, Optional<PrefixFile>> snapshot = files.get();
+        Map<ThreatListDescriptor, List<byte[]>> matches = new HashMap<>();
+        for (ThreatListDescriptor descriptor : descriptors) {
+            Optional<PrefixFile> file = snapshot.get(descriptor);
+            if (file == null) {
+                file = getFile(descriptor);
+            }
+            if (file.isPresent()) {
+                List<byte[]> found = file.get().findAll(candidates);
+                if (!found.isEmpty()) {
+                    matches.put(descriptor, found);
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public void clear(ThreatListDescriptor descriptor) throws IOException {
+        lock.lock();
+        try {
+            Files.deleteIfExists(getPath(descriptor));
+            files.publish(descriptor, Optional.empty());
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.info("File of {} deleted", descriptor);
+    }
+
+    @Override
+    public void update(ThreatListDescriptor descriptor, List<byte[]> removals, List<byte[]> additions)
+        throws IOException {
+        lock.lock();
+        try {
+            Optional<PrefixFile> file = getFile(descriptor);
+            PrefixIndex index = file.isPresent() ? file.get().index().update(removals, additions)
+                : PrefixIndex.build(additions);
+            write(descriptor, index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void replace(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        lock.lock();
+        try {
+            write(descriptor, PrefixIndex.build(hashes));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(ThreatListDescriptor descriptor, PrefixIndex index) throws IOException {
+        Path path = getPath(descriptor);
+        Files.createDirectories(directory);
+        PrefixFile.write(path, index);
+        files.publish(descriptor, Optional.of(PrefixFile.open(path)));
+        LOGGER.info("Written {} items to {}", index.size(), path);
+    }
+
+    private Optional<PrefixFile> getFile(ThreatListDescriptor descriptor) throws IOException {
+        Optional<PrefixFile> file = files.get(descriptor);
+        if (file != null) {
+            return file;
+        }
+        lock.lock();
+        try {
+            file = files.get(descriptor);
+            if (file == null) {
+                Path path = getPath(descriptor);
+                file = Files.exists(path) ? Optional.of(PrefixFile.open(path)) : Optional.empty();
+                files.publish(descriptor, file);
+            }
+            return file;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path getPath(ThreatListDescriptor descriptor) {
+        return directory.resolve(descriptor + FILE_EXTENSION);
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link LocalDatabase} that answers lookups from in-memory prefix indices.
+ * <p>
+ * Hashes are persisted to the underlying SQL database which stays the source of truth. For each threat list, an
+ * in-memory index is loaded on first lookup and rebuilt every time hashes are persisted. This way, lookups do not make
+ * any database round trips.
+ * <p>
+ * Indices are immutable and they are published through {@link ListSnapshots}. Lookups do not take any locks and they
+ * always see a complete version of a threat list while the next version is being built on the side.
+ * <p>
+ * 4-byte prefixes are kept in the {@link PrefixStorage} selected by configuration. Memory constrained deployments may
+ * use Rice coded storage which takes about half the memory of plain arrays at the cost of slower lookups. Direct
+ * storage keeps prefixes outside of the Java heap. Indices are loaded from a cursor over the SQL database and updates
+ * are merged straight into the storage of the new index, so neither of them holds a whole list on the heap. Replaced
+ * direct buffers are released by garbage collector only; see {@link DirectIntArray} on sizing of direct memory.
+ *
+ * @author azilet
+ */
+@Singleton
+class MemoryLocalDatabase implements LocalDatabase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryLocalDatabase.class);
+
+    private final ListSnapshots<PrefixIndex> indices = new ListSnapshots<>();
+    private final Lock lock = new ReentrantLock();
+
+    @Inject
+    SqlLocalDatabase delegate;
+
+    PrefixStorage storage = PrefixStorage.ARRAY;
+
+    @Inject
+    void setProperties(Gsb4jProperties properties) {
+        storage = PrefixStorage.forName(properties.getMemoryStorage());
+    }
+
+    @Override
+    public List<byte[]> load(ThreatListDescriptor descriptor) throws IOException {
+        return delegate.load(descriptor);
+    }
+
+    @Override
+    public PrefixCursor cursor(ThreatListDescriptor descriptor) throws IOException {
+        return getIndex(descriptor).cursor();
+    }
+
+    @Override
+    public void persist(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        lock.lock();
+        try {
+            delegate.persist(descriptor, hashes);
+
+            PrefixIndex index = indices.get(descriptor);
+            if (index != null) {
+                index = index.union(hashes);
+            } else {
+                // there might be hashes persisted before which are not indexed yet
+                index = loadIndex(descriptor);
+            }
+            indices.publish(descriptor, index);
+            LOGGER.info("Index of {} rebuilt with {} prefixes in {} bytes", descriptor, index.size(),
+                index.sizeInBytes());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(byte[] hash, ThreatListDescriptor descriptor) throws IOException {
+        return getIndex(descriptor).contains(hash);
+    }
+
+    @Override
+    public Map<ThreatListDescriptor, List<byte[]>> findMatches(Collection<byte[]> hashes,
+        Collection<ThreatListDescriptor> descriptors) throws IOException {
+        PrefixCandidates candidates = new PrefixCandidates(hashes);
+        Map<ThreatListDescriptor, PrefixIndex> snapshot = indices.get();
+        Map<ThreatListDescriptor, List<byte[]>> matches = new HashMap<>();
+        for (ThreatListDescriptor descriptor : descriptors) {
+            PrefixIndex index = snapshot.get(descriptor);
+            if (index == null) {
+                index = getIndex(descriptor);
+            }
+            List<byte[]> found = index.findAll(candidates);
+            if (!found.isEmpty()) {
+                matches.put(descriptor, found);
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public void clear(ThreatListDescriptor descriptor) throws IOException {
+        lock.lock();
+        try {
+            delegate.clear(descriptor);
+            // updates of the index keep its storage, so even an empty index has to use the configured one
+            indices.publish(descriptor, PrefixIndex.build(Collections.emptyList(), storage));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void update(ThreatListDescriptor descriptor, List<byte[]> removals, List<byte[]> additions)
+        throws IOException {
+        lock.lock();
+        try {
+            delegate.update(descriptor, removals, additions);
+
+            PrefixIndex index = indices.get(descriptor);
+            if (index != null) {
+                index = index.update(removals, additions);
+            } else {
+                index = loadIndex(descriptor);
+            }
+            indices.publish(descriptor, index);
+            LOGGER.info("Index of {} rebuilt with {} prefixes in {} bytes", descriptor, index.size(),
+                index.sizeInBytes());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void replace(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        lock.lock();
+        try {
+            delegate.replace(descriptor, hashes);
+
+            PrefixIndex index = PrefixIndex.build(hashes, storage);
+            indices.publish(descriptor, index);
+            LOGGER.info("Index of {} rebuilt with {} prefixes in {} bytes", descriptor, index.size(),
+                index.sizeInBytes());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PrefixIndex getIndex(ThreatListDescriptor descriptor) throws IOException {
+        PrefixIndex index = indices.get(descriptor);
+        if (index != null) {
+            return index;
+        }
+        lock.lock();
+        try {
+            index = indices.get(descriptor);
+            if (index == null) {
+                index = loadIndex(descriptor);
+                indices.publish(descriptor, index);
+                LOGGER.info("Index of {} loaded with {} prefixes in {} bytes", descriptor, index.size(),
+                    index.sizeInBytes());
+            }
+            return index;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PrefixIndex loadIndex(ThreatListDescriptor descriptor) throws IOException {
+        // storage of 4-byte prefixes is allocated once at its final size, so they are counted first
+        int count = 0;
+        try (PrefixCursor cursor = delegate.cursor(descriptor)) {
+            while (cursor.next()) {
+                if (cursor.current().length == PrefixIndex.SHORT_PREFIX_SIZE) {
+                    count++;
+                }
+            }
+        }
+        try (PrefixCursor cursor = delegate.cursor(descriptor)) {
+            return PrefixIndex.build(cursor, count, storage);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import kg.net.bazi.gsb4j.util.HashPrefixes;
+
+/**
+ * Hash prefixes to look up in bulk. Prefixes are grouped by size and sorted in lexicographic order within each group so
+ * that sorted prefix stores can be probed in a single ascending pass.
+ *
+ * @author azilet
+ */
+final class PrefixCandidates {
+
+    private final SortedMap<Integer, List<byte[]>> bySize = new TreeMap<>();
+
+    /**
+     * Makes candidates out of hash prefixes.
+     *
+     * @param hashes hash prefixes
+     * @throws IllegalArgumentException if any of the hashes is shorter than 4 bytes
+     */
+    PrefixCandidates(Collection<byte[]> hashes) {
+        for (byte[] hash : hashes) {
+            PrefixIndex.check(hash);
+            bySize.computeIfAbsent(hash.length, k -> new ArrayList<>()).add(hash);
+        }
+        for (List<byte[]> ls : bySize.values()) {
+            Collections.sort(ls, HashPrefixes.LEXICOGRAPHIC_ORDER);
+        }
+    }
+
+    /**
+     * Gets candidates grouped by prefix size.
+     *
+     * @return map of prefix sizes to candidates sorted in lexicographic order
+     */
+    Map<Integer, List<byte[]>> bySize() {
+        return Collections.unmodifiableMap(bySize);
+    }
+
+}
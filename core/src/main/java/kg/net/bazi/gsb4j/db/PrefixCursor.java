@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Forward-only cursor over hash prefixes of a threat list in lexicographic order.
+ * <p>
+ * Cursors do not materialize threat lists. Array returned by {@link #current()} may be reused by the cursor and it is
+ * valid only until the next call to {@link #next()}; callers that keep prefixes shall copy them. Cursors shall be
+ * closed after use as they may hold database resources.
+ *
+ * @author azilet
+ */
+public interface PrefixCursor extends Closeable {
+
+    /**
+     * Moves cursor to the next prefix. Cursor is positioned before the first prefix initially.
+     *
+     * @return {@code true} if cursor is moved to the next prefix; {@code false} if there are no more prefixes
+     * @throws IOException when I/O errors occur
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Gets prefix the cursor is positioned at.
+     *
+     * @return raw hash prefix; valid until the next call to {@link #next()}
+     */
+    byte[] current();
+
+    /**
+     * Makes a cursor over prefixes of a list.
+     *
+     * @param hashes raw hash prefixes in lexicographic order
+     * @return cursor over prefixes
+     */
+    static PrefixCursor of(List<byte[]> hashes) {
+        Iterator<byte[]> iterator = hashes.iterator();
+        return new PrefixCursor() {
+
+            private byte[] current;
+
+            @Override
+            public boolean next() {
+                current = iterator.hasNext() ? iterator.next() : null;
+                return current != null;
+            }
+
+            @Override
+            public byte[] current() {
+                return current;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+}
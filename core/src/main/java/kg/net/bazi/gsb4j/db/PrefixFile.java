@@ -0,0 +1,288 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import kg.net.bazi.gsb4j.util.HashPrefixes;
+
+/**
+ * Memory mapped binary file of sorted hash prefixes of a single threat list.
+ * <p>
+ * File starts with a header which consists of magic number, format version, number of sections, and CRC32 checksum of
+ * all section data. Header is followed by a section table where each entry is a prefix size and a number of prefixes of
+ * that size. Section data follows the section table in the same order: prefixes of a section are fixed width and they
+ * are stored one after another in lexicographic order. All numbers are 4-byte big-endian integers.
+ * <p>
+ * Files are never modified in place. New version of a file is written to a temporary file which is then atomically
+ * moved over the old one. Instances that have the old file mapped keep reading the old version.
+ *
+ * @author azilet
+ */
+final class PrefixFile {
+
+    static final int MAGIC = 0x47534234;
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int SECTION_ENTRY_SIZE = 2 * Integer.BYTES;
+
+    private final SortedMap<Integer, ByteBuffer> sections;
+
+    private PrefixFile(SortedMap<Integer, ByteBuffer> sections) {
+        this.sections = sections;
+    }
+
+    /**
+     * Writes prefixes of the index to a file. File is replaced atomically.
+     *
+     * @param path path of the file to write
+     * @param index prefixes to write
+     * @throws IOException when I/O errors occur
+     */
+    static void write(Path path, PrefixIndex index) throws IOException {
+        SortedMap<Integer, byte[]> sections = index.sections();
+        CRC32 crc = new CRC32();
+        sections.values().forEach(crc::update);
+
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sections.size());
+                out.writeInt((int) crc.getValue());
+                for (Map.Entry<Integer, byte[]> e : sections.entrySet()) {
+                    out.writeInt(e.getKey());
+                    out.writeInt(e.getValue().length / e.getKey());
+                }
+                for (byte[] packed : sections.values()) {
+                    out.write(packed);
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Opens and maps a prefix file into memory. Header and checksum of the file are verified.
+     *
+     * @param path path of the file to open
+     * @return mapped prefix file
+     * @throws IOException when I/O errors occur or the file is not a valid prefix file
+     */
+    static PrefixFile open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a prefix file: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported prefix file version " + buffer.getInt(4) + ": " + path);
+        }
+        int sectionCount = buffer.getInt(8);
+        int checksum = buffer.getInt(12);
+
+        long offset = HEADER_SIZE + (long) sectionCount * SECTION_ENTRY_SIZE;
+        if (sectionCount < 0 || offset > buffer.limit()) {
+            throw new IOException("Corrupted prefix file header: " + path);
+        }
+        SortedMap<Integer, ByteBuffer> sections = new TreeMap<>();
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < sectionCount; i++) {
+            int entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE;
+            int size = buffer.getInt(entry);
+            int count = buffer.getInt(entry + 4);
+            long length = (long) size * count;
+            if (size < PrefixIndex.SHORT_PREFIX_SIZE || count < 0 || sections.containsKey(size)
+                || offset + length > buffer.limit()) {
+                throw new IOException("Corrupted prefix file section table: " + path);
+            }
+            ByteBuffer section = slice(buffer, (int) offset, (int) length);
+            crc.update(section.duplicate());
+            sections.put(size, section);
+            offset += length;
+        }
+        if (offset != buffer.limit() || (int) crc.getValue() != checksum) {
+            throw new IOException("Prefix file checksum mismatch: " + path);
+        }
+        return new PrefixFile(sections);
+    }
+
+    /**
+     * Checks if supplied prefix exists in this file.
+     *
+     * @param prefix prefix to look for
+     * @return {@code true} if prefix exists; {@code false} otherwise
+     */
+    boolean contains(byte[] prefix) {
+        ByteBuffer section = sections.get(prefix.length);
+        return section != null && binarySearch(section, 0, prefix) >= 0;
+    }
+
+    /**
+     * Finds candidate prefixes that exist in this file. Candidates are probed in ascending order and each binary search
+     * starts from the position where the previous one ended.
+     *
+     * @param candidates prefixes to look for
+     * @return candidates that exist in this file
+     */
+    List<byte[]> findAll(PrefixCandidates candidates) {
+        List<byte[]> found = new ArrayList<>();
+        for (Map.Entry<Integer, List<byte[]>> e : candidates.bySize().entrySet()) {
+            ByteBuffer section = sections.get(e.getKey());
+            if (section == null) {
+                continue;
+            }
+            int from = 0;
+            for (byte[] candidate : e.getValue()) {
+                int pos = binarySearch(section, from, candidate);
+                if (pos >= 0) {
+                    found.add(candidate);
+                    from = pos;
+                } else {
+                    from = -(pos + 1);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads all prefixes of this file in lexicographic order.
+     *
+     * @return list of prefixes
+     */
+    List<byte[]> prefixes() {
+        List<byte[]> result = new ArrayList<>(size());
+        for (Map.Entry<Integer, ByteBuffer> e : sections.entrySet()) {
+            ByteBuffer section = e.getValue().duplicate();
+            while (section.hasRemaining()) {
+                byte[] prefix = new byte[e.getKey()];
+                section.get(prefix);
+                result.add(prefix);
+            }
+        }
+        if (sections.size() > 1) {
+            Collections.sort(result, HashPrefixes.LEXICOGRAPHIC_ORDER);
+        }
+        return result;
+    }
+
+    /**
+     * Copies prefixes of this file to an in-memory index. Prefixes in the file are already sorted, so no sorting is
+     * done.
+     *
+     * @return index of prefixes of this file
+     */
+    PrefixIndex index() {
+        Map<Integer, byte[]> packed = new HashMap<>();
+        for (Map.Entry<Integer, ByteBuffer> e : sections.entrySet()) {
+            byte[] bytes = new byte[e.getValue().limit()];
+            e.getValue().duplicate().get(bytes);
+            packed.put(e.getKey(), bytes);
+        }
+        return PrefixIndex.ofSections(packed, PrefixStorage.ARRAY);
+    }
+
+    /**
+     * Makes a cursor over prefixes of this file in lexicographic order.
+     *
+     * @return cursor over prefixes
+     */
+    PrefixCursor cursor() {
+        List<SectionCursor.Section> ls = new ArrayList<>();
+        sections.forEach((size, section) -> ls.add(SectionCursor.Section.packed(size, section)));
+        return new SectionCursor(ls);
+    }
+
+    /**
+     * Gets number of prefixes in this file.
+     *
+     * @return number of prefixes
+     */
+    int size() {
+        int size = 0;
+        for (Map.Entry<Integer, ByteBuffer> e : sections.entrySet()) {
+            size += e.getValue().limit() / e.getKey();
+        }
+        return size;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        // cast to Buffer keeps the code binary compatible with Java 8 where position and limit return Buffer
+        Buffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return ((ByteBuffer) view).slice();
+    }
+
+    private static int binarySearch(ByteBuffer section, int fromIndex, byte[] key) {
+        int size = key.length;
+        int low = fromIndex;
+        int high = section.limit() / size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareAt(section, mid * size, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compareAt(ByteBuffer section, int offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            int cmp = Integer.compare(section.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+}
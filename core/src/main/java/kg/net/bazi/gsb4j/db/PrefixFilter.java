@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Immutable Bloom filter of hash prefixes of a single threat list.
+ * <p>
+ * Filter is built on the first 4 bytes of hash prefixes. All prefixes are at least 4 bytes long, so any hash that
+ * starts with one of the prefixes shares the first 4 bytes with it. This lets a single probe answer for all prefix
+ * lengths of a full hash. Since leading bytes of SHA256 hashes are already uniformly distributed, they are used as is
+ * for the first Bloom hash function; the rest are derived by double hashing.
+ *
+ * @author azilet
+ */
+final class PrefixFilter {
+
+    static final PrefixFilter EMPTY = new PrefixFilter(new long[1], 1, 0);
+
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final int capacity;
+    private int insertions;
+
+    private PrefixFilter(long[] bits, int hashFunctions, int capacity) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.hashFunctions = hashFunctions;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Builds a filter of hash prefixes.
+     *
+     * @param hashes hash prefixes
+     * @param falsePositiveRate desired false positive rate
+     * @param maxBytes max size of the filter in bytes; if filter of desired false positive rate does not fit into this
+     * size then smaller filter with higher false positive rate is built
+     * @return filter of prefixes
+     * @throws IllegalArgumentException if any of the hashes is shorter than 4 bytes
+     */
+    static PrefixFilter build(Collection<byte[]> hashes, double falsePositiveRate, int maxBytes) {
+        PrefixFilter filter = allocate(hashes.size(), falsePositiveRate, maxBytes);
+        for (byte[] hash : hashes) {
+            filter.add(PrefixIndex.check(hash));
+        }
+        return filter;
+    }
+
+    /**
+     * Builds a filter of hash prefixes read from a cursor. Prefixes are not kept in memory.
+     *
+     * @param count number of prefixes of the cursor; filter is sized for this number
+     * @param cursor cursor over hash prefixes
+     * @param falsePositiveRate desired false positive rate
+     * @param maxBytes max size of the filter in bytes
+     * @return filter of prefixes
+     * @throws IOException when cursor fails to read
+     */
+    static PrefixFilter build(int count, PrefixCursor cursor, double falsePositiveRate, int maxBytes)
+        throws IOException {
+        PrefixFilter filter = allocate(count, falsePositiveRate, maxBytes);
+        while (cursor.next()) {
+            filter.add(PrefixIndex.check(cursor.current()));
+        }
+        return filter;
+    }
+
+    private static PrefixFilter allocate(int n, double falsePositiveRate, int maxBytes) {
+        if (n == 0) {
+            // callers may add prefixes anyway when the count is stale, so the shared empty filter is never returned
+            return new PrefixFilter(new long[1], 1, 0);
+        }
+        double optimalBits = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long maxBits = Math.max((long) maxBytes * Byte.SIZE, Long.SIZE);
+        int words = (int) ((Math.min((long) Math.ceil(optimalBits), maxBits) + Long.SIZE - 1) / Long.SIZE);
+        long[] bits = new long[Math.max(words, 1)];
+
+        long m = (long) bits.length * Long.SIZE;
+        int k = (int) Math.round((double) m / n * Math.log(2));
+        k = Math.max(1, Math.min(k, MAX_HASH_FUNCTIONS));
+        return new PrefixFilter(bits, k, n);
+    }
+
+    /**
+     * Makes a copy of this filter with additional hash prefixes. Bits of removed prefixes cannot be cleared in a Bloom
+     * filter, so they stay and only raise the false positive rate.
+     *
+     * @param hashes hash prefixes to add
+     * @return new filter; this filter is not modified
+     */
+    PrefixFilter with(Collection<byte[]> hashes) {
+        PrefixFilter filter = new PrefixFilter(bits.clone(), hashFunctions, capacity);
+        filter.insertions = insertions;
+        for (byte[] hash : hashes) {
+            filter.add(PrefixIndex.check(hash));
+        }
+        return filter;
+    }
+
+    /**
+     * Checks if more prefixes are added to the filter than it is sized for, so that its false positive rate is
+     * considerably higher than the desired one.
+     *
+     * @return {@code true} if the filter should be rebuilt
+     */
+    boolean isOverfilled() {
+        return insertions > 2 * capacity;
+    }
+
+    /**
+     * Checks if the filter might contain a prefix of supplied hash.
+     *
+     * @param hash hash or hash prefix to check; shall be at least 4 bytes long
+     * @return {@code false} if none of the prefixes of the filter is a prefix of the hash; {@code true} if the hash may
+     * start with one of the prefixes
+     */
+    boolean mightContain(byte[] hash) {
+        int h1 = leadingInt(hash);
+        int h2 = mix(h1);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets size of the filter in bytes.
+     *
+     * @return size in bytes
+     */
+    int sizeInBytes() {
+        return bits.length * Long.BYTES;
+    }
+
+    private void add(byte[] hash) {
+        insertions++;
+        int h1 = leadingInt(hash);
+        int h2 = mix(h1);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static int leadingInt(byte[] hash) {
+        return (hash[0] & 0xff) << 24
+            | (hash[1] & 0xff) << 16
+            | (hash[2] & 0xff) << 8
+            | (hash[3] & 0xff);
+    }
+
+    /**
+     * Finalization step of MurmurHash3 which derives second hash function from the first one. Result is made odd so
+     * that probes never collapse into a single bit.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+
+}
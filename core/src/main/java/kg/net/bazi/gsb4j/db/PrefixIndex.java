@@ -0,0 +1,515 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import kg.net.bazi.gsb4j.util.HashPrefixes;
+
+/**
+ * Immutable in-memory index of hash prefixes of a single threat list.
+ * <p>
+ * Vast majority of prefixes in threat lists are 4 bytes long. Such prefixes are kept in a {@link ShortPrefixSet} of the
+ * configured {@link PrefixStorage}. All longer prefixes are kept in a side table with one sorted array per prefix length
+ * where prefixes are packed one after another. Lookups are binary searches on these arrays.
+ *
+ * @author azilet
+ */
+final class PrefixIndex {
+
+    static final int SHORT_PREFIX_SIZE = 4;
+
+    private static final byte[] EMPTY_PACKED = new byte[0];
+
+    private final PrefixStorage storage;
+    private final ShortPrefixSet shortPrefixes;
+    private final Map<Integer, byte[]> longPrefixes;
+
+    private PrefixIndex(PrefixStorage storage, ShortPrefixSet shortPrefixes, Map<Integer, byte[]> longPrefixes) {
+        this.storage = storage;
+        this.shortPrefixes = shortPrefixes;
+        this.longPrefixes = longPrefixes;
+    }
+
+    /**
+     * Builds an index of hash prefixes.
+     *
+     * @param hashes hash prefixes
+     * @return index of prefixes
+     * @throws IllegalArgumentException if any of the hashes is shorter than 4 bytes
+     */
+    static PrefixIndex build(Collection<byte[]> hashes) {
+        return build(hashes, PrefixStorage.ARRAY);
+    }
+
+    /**
+     * Builds an index of hash prefixes where 4-byte prefixes are kept in the supplied storage.
+     *
+     * @param hashes hash prefixes
+     * @param storage storage of 4-byte prefixes
+     * @return index of prefixes
+     * @throws IllegalArgumentException if any of the hashes is shorter than 4 bytes
+     */
+    static PrefixIndex build(Collection<byte[]> hashes, PrefixStorage storage) {
+        Builder builder = new Builder();
+        hashes.forEach(builder::add);
+        return builder.build(storage);
+    }
+
+    /**
+     * Builds an index of prefixes read from a cursor. 4-byte prefixes are appended straight to the storage, so only
+     * prefixes longer than 4 bytes are collected on the heap.
+     *
+     * @param cursor cursor over prefixes in lexicographic order without duplicates
+     * @param shortPrefixCount number of 4-byte prefixes the cursor returns
+     * @param storage storage of 4-byte prefixes
+     * @return index of prefixes
+     * @throws IOException when I/O errors occur
+     * @throws IllegalArgumentException if any of the hashes is shorter than 4 bytes
+     */
+    static PrefixIndex build(PrefixCursor cursor, int shortPrefixCount, PrefixStorage storage) throws IOException {
+        ShortPrefixSet.Appender shortPrefixes = storage.appender(shortPrefixCount);
+        Builder longPrefixes = new Builder();
+        while (cursor.next()) {
+            byte[] prefix = check(cursor.current());
+            if (prefix.length == SHORT_PREFIX_SIZE) {
+                shortPrefixes.add(toSortableInt(prefix));
+            } else {
+                // current prefix of a cursor is valid until it moves
+                longPrefixes.add(prefix.clone());
+            }
+        }
+        return new PrefixIndex(storage, shortPrefixes.build(), longPrefixes.packedLongPrefixes());
+    }
+
+    /**
+     * Makes a new index that contains all prefixes of this index together with supplied additional prefixes.
+     *
+     * @param hashes hash prefixes to add
+     * @return new index
+     * @throws IllegalArgumentException if any of the hashes is shorter than 4 bytes
+     */
+    PrefixIndex union(Collection<byte[]> hashes) {
+        return update(Collections.emptyList(), hashes);
+    }
+
+    /**
+     * Makes an index of prefixes which are already grouped by size and sorted, as returned by {@link #sections()}.
+     * Prefixes are taken as is, so building such an index takes linear time.
+     *
+     * @param sections map of prefix sizes to prefixes packed in lexicographic order without duplicates
+     * @param storage storage of 4-byte prefixes
+     * @return index of prefixes
+     */
+    static PrefixIndex ofSections(Map<Integer, byte[]> sections, PrefixStorage storage) {
+        Map<Integer, byte[]> longPrefixes = new HashMap<>(sections);
+        byte[] packed = longPrefixes.remove(SHORT_PREFIX_SIZE);
+        int[] values = new int[packed != null ? packed.length / SHORT_PREFIX_SIZE : 0];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = toSortableInt(packed, i * SHORT_PREFIX_SIZE);
+        }
+        return new PrefixIndex(storage, storage.create(values), longPrefixes);
+    }
+
+    /**
+     * Makes a new index that contains prefixes of this index except removed ones together with added prefixes. New
+     * index keeps 4-byte prefixes in the same storage as this one.
+     * <p>
+     * Only the diff is sorted. Prefixes of this index are already sorted, so they are merged with the diff in a single
+     * pass and 4-byte prefixes are appended straight to the storage of the new index.
+     *
+     * @param removals hash prefixes to remove
+     * @param additions hash prefixes to add
+     * @return new index
+     * @throws IllegalArgumentException if any of the added hashes is shorter than 4 bytes
+     */
+    PrefixIndex update(Collection<byte[]> removals, Collection<byte[]> additions) {
+        Builder removed = new Builder();
+        removals.forEach(removed::add);
+        Builder added = new Builder();
+        additions.forEach(added::add);
+
+        int[] addedShortPrefixes = added.sortedShortPrefixes();
+        ShortPrefixSet.Appender merged = storage.appender(shortPrefixes.size() + addedShortPrefixes.length);
+        merge(shortPrefixes.iterator(), removed.sortedShortPrefixes(), addedShortPrefixes, merged);
+
+        Map<Integer, byte[]> removedLongPrefixes = removed.packedLongPrefixes();
+        Map<Integer, byte[]> addedLongPrefixes = added.packedLongPrefixes();
+        Map<Integer, byte[]> mergedLongPrefixes = new HashMap<>();
+        Set<Integer> sizes = new HashSet<>(longPrefixes.keySet());
+        sizes.addAll(addedLongPrefixes.keySet());
+        for (int size : sizes) {
+            byte[] packed = merge(size, longPrefixes.getOrDefault(size, EMPTY_PACKED),
+                removedLongPrefixes.getOrDefault(size, EMPTY_PACKED),
+                addedLongPrefixes.getOrDefault(size, EMPTY_PACKED));
+            if (packed.length > 0) {
+                mergedLongPrefixes.put(size, packed);
+            }
+        }
+        return new PrefixIndex(storage, merged.build(), mergedLongPrefixes);
+    }
+
+    /**
+     * Checks if the index contains supplied hash prefix.
+     *
+     * @param prefix hash prefix
+     * @return {@code true} if prefix exists in the index; {@code false} otherwise
+     */
+    boolean contains(byte[] prefix) {
+        if (prefix.length == SHORT_PREFIX_SIZE) {
+            return shortPrefixes.search(toSortableInt(prefix), 0) >= 0;
+        }
+        byte[] packed = longPrefixes.get(prefix.length);
+        return packed != null && binarySearch(packed, 0, prefix) >= 0;
+    }
+
+    /**
+     * Finds candidate prefixes that exist in the index. Candidates are probed in ascending order and each binary search
+     * starts from the position where the previous one ended, which makes it a merge join of the two sorted sequences.
+     *
+     * @param candidates prefixes to look for
+     * @return candidates that exist in the index
+     */
+    List<byte[]> findAll(PrefixCandidates candidates) {
+        List<byte[]> found = new ArrayList<>();
+        for (Map.Entry<Integer, List<byte[]>> e : candidates.bySize().entrySet()) {
+            int size = e.getKey();
+            int from = 0;
+            if (size == SHORT_PREFIX_SIZE) {
+                for (byte[] candidate : e.getValue()) {
+                    int pos = shortPrefixes.search(toSortableInt(candidate), from);
+                    if (pos >= 0) {
+                        found.add(candidate);
+                        from = pos;
+                    } else {
+                        from = -(pos + 1);
+                    }
+                }
+            } else if (longPrefixes.containsKey(size)) {
+                byte[] packed = longPrefixes.get(size);
+                for (byte[] candidate : e.getValue()) {
+                    int pos = binarySearch(packed, from, candidate);
+                    if (pos >= 0) {
+                        found.add(candidate);
+                        from = pos;
+                    } else {
+                        from = -(pos + 1);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Makes a cursor over prefixes of this index in lexicographic order.
+     *
+     * @return cursor over prefixes
+     */
+    PrefixCursor cursor() {
+        List<SectionCursor.Section> sections = new ArrayList<>();
+        if (shortPrefixes.size() > 0) {
+            sections.add(SectionCursor.Section.sortableInts(shortPrefixes.iterator()));
+        }
+        longPrefixes.forEach((size, packed) -> sections.add(SectionCursor.Section.packed(size, packed)));
+        return new SectionCursor(sections);
+    }
+
+    /**
+     * Gets storage of 4-byte prefixes of this index.
+     *
+     * @return storage of 4-byte prefixes
+     */
+    PrefixStorage storage() {
+        return storage;
+    }
+
+    /**
+     * Gets number of prefixes in this index.
+     *
+     * @return number of prefixes
+     */
+    int size() {
+        int size = shortPrefixes.size();
+        for (Map.Entry<Integer, byte[]> e : longPrefixes.entrySet()) {
+            size += e.getValue().length / e.getKey();
+        }
+        return size;
+    }
+
+    /**
+     * Gets approximate number of bytes this index takes in memory.
+     *
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        long bytes = shortPrefixes.sizeInBytes();
+        for (byte[] packed : longPrefixes.values()) {
+            bytes += packed.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets prefixes of this index grouped by prefix size. Prefixes of each size are packed one after another in a
+     * single array in lexicographic order.
+     *
+     * @return map of prefix sizes to packed prefixes; sizes are in ascending order
+     */
+    SortedMap<Integer, byte[]> sections() {
+        SortedMap<Integer, byte[]> sections = new TreeMap<>(longPrefixes);
+        if (shortPrefixes.size() > 0) {
+            int[] values = shortPrefixes.toArray();
+            byte[] packed = new byte[values.length * SHORT_PREFIX_SIZE];
+            for (int i = 0; i < values.length; i++) {
+                int value = values[i] ^ Integer.MIN_VALUE;
+                int offset = i * SHORT_PREFIX_SIZE;
+                packed[offset] = (byte) (value >>> 24);
+                packed[offset + 1] = (byte) (value >>> 16);
+                packed[offset + 2] = (byte) (value >>> 8);
+                packed[offset + 3] = (byte) value;
+            }
+            sections.put(SHORT_PREFIX_SIZE, packed);
+        }
+        return sections;
+    }
+
+    /**
+     * Merges sorted distinct 4-byte prefixes with sorted distinct removals and additions. Prefixes that are both removed
+     * and added stay in the result.
+     */
+    private static void merge(PrimitiveIterator.OfInt current, int[] removals, int[] additions,
+        ShortPrefixSet.Appender merged) {
+        int nextRemoved = 0;
+        int nextAdded = 0;
+        while (current.hasNext()) {
+            int value = current.nextInt();
+            while (nextRemoved < removals.length && removals[nextRemoved] < value) {
+                nextRemoved++;
+            }
+            if (nextRemoved < removals.length && removals[nextRemoved] == value) {
+                continue;
+            }
+            while (nextAdded < additions.length && additions[nextAdded] < value) {
+                merged.add(additions[nextAdded++]);
+            }
+            if (nextAdded < additions.length && additions[nextAdded] == value) {
+                nextAdded++;
+            }
+            merged.add(value);
+        }
+        while (nextAdded < additions.length) {
+            merged.add(additions[nextAdded++]);
+        }
+    }
+
+    /**
+     * Merges packed sorted distinct prefixes of the same size with packed sorted distinct removals and additions.
+     * Prefixes that are both removed and added stay in the result.
+     */
+    private static byte[] merge(int size, byte[] current, byte[] removals, byte[] additions) {
+        byte[] merged = new byte[current.length + additions.length];
+        int count = 0;
+        int nextRemoved = 0;
+        int nextAdded = 0;
+        for (int offset = 0; offset < current.length; offset += size) {
+            while (nextRemoved < removals.length && compare(removals, nextRemoved, current, offset, size) < 0) {
+                nextRemoved += size;
+            }
+            if (nextRemoved < removals.length && compare(removals, nextRemoved, current, offset, size) == 0) {
+                continue;
+            }
+            int cmp = -1;
+            while (nextAdded < additions.length
+                && (cmp = compare(additions, nextAdded, current, offset, size)) < 0) {
+                System.arraycopy(additions, nextAdded, merged, count, size);
+                count += size;
+                nextAdded += size;
+            }
+            if (nextAdded < additions.length && cmp == 0) {
+                nextAdded += size;
+            }
+            System.arraycopy(current, offset, merged, count, size);
+            count += size;
+        }
+        System.arraycopy(additions, nextAdded, merged, count, additions.length - nextAdded);
+        count += additions.length - nextAdded;
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    private static int compare(byte[] left, int leftOffset, byte[] right, int rightOffset, int size) {
+        for (int i = 0; i < size; i++) {
+            int cmp = Integer.compare(left[leftOffset + i] & 0xff, right[rightOffset + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static int binarySearch(byte[] packed, int fromIndex, byte[] key) {
+        int size = key.length;
+        int low = fromIndex;
+        int high = packed.length / size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareAt(packed, mid * size, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compareAt(byte[] packed, int offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            int cmp = Integer.compare(packed[offset + i] & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Converts 4-byte prefix to an integer with flipped sign bit so that natural signed order of such integers is the
+     * same as the lexicographic order of prefixes.
+     */
+    private static int toSortableInt(byte[] prefix) {
+        return toSortableInt(prefix, 0);
+    }
+
+    private static int toSortableInt(byte[] packed, int offset) {
+        int value = (packed[offset] & 0xff) << 24
+            | (packed[offset + 1] & 0xff) << 16
+            | (packed[offset + 2] & 0xff) << 8
+            | (packed[offset + 3] & 0xff);
+        return value ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Checks that the hash prefix is at least 4 bytes long.
+     *
+     * @param prefix hash prefix
+     * @return the same prefix
+     * @throws IllegalArgumentException if hash prefix is too short
+     */
+    static byte[] check(byte[] prefix) {
+        if (prefix.length < SHORT_PREFIX_SIZE) {
+            throw new IllegalArgumentException("Hash prefix too short: " + prefix.length + " byte(s)");
+        }
+        return prefix;
+    }
+
+    /**
+     * Collects prefixes and then builds an index.
+     */
+    private static class Builder {
+
+        private final IntList shortPrefixes = new IntList();
+        private final List<byte[]> longPrefixes = new ArrayList<>();
+
+        void add(byte[] prefix) {
+            check(prefix);
+            if (prefix.length == SHORT_PREFIX_SIZE) {
+                shortPrefixes.add(toSortableInt(prefix));
+            } else {
+                longPrefixes.add(prefix);
+            }
+        }
+
+        PrefixIndex build(PrefixStorage storage) {
+            return new PrefixIndex(storage, storage.create(sortedShortPrefixes()), packedLongPrefixes());
+        }
+
+        int[] sortedShortPrefixes() {
+            return shortPrefixes.toSortedDistinctArray();
+        }
+
+        Map<Integer, byte[]> packedLongPrefixes() {
+            Map<Integer, List<byte[]>> bySize = new HashMap<>();
+            for (byte[] prefix : longPrefixes) {
+                bySize.computeIfAbsent(prefix.length, k -> new ArrayList<>()).add(prefix);
+            }
+            Map<Integer, byte[]> packed = new HashMap<>();
+            for (Map.Entry<Integer, List<byte[]>> e : bySize.entrySet()) {
+                packed.put(e.getKey(), pack(e.getKey(), e.getValue()));
+            }
+            return packed;
+        }
+
+        private byte[] pack(int size, List<byte[]> prefixes) {
+            prefixes.sort(HashPrefixes.LEXICOGRAPHIC_ORDER);
+            byte[] packed = new byte[prefixes.size() * size];
+            int count = 0;
+            byte[] previous = null;
+            for (byte[] prefix : prefixes) {
+                if (previous == null || !Arrays.equals(previous, prefix)) {
+                    System.arraycopy(prefix, 0, packed, count * size, size);
+                    count++;
+                }
+                previous = prefix;
+            }
+            return count * size == packed.length ? packed : Arrays.copyOf(packed, count * size);
+        }
+    }
+
+    /**
+     * Minimal growable list of primitive integers.
+     */
+    private static class IntList {
+
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toSortedDistinctArray() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+            return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Representations of 4-byte hash prefixes in in-memory indices.
+ *
+ * @author azilet
+ */
+enum PrefixStorage {
+
+    /**
+     * Plain sorted array of 4 bytes per prefix; fastest lookups.
+     */
+    ARRAY {
+        @Override
+        ShortPrefixSet create(int[] values) {
+            return new SortedIntArray(values);
+        }
+    },
+    /**
+     * Rice-delta coded blocks of about 2 bytes per prefix; see {@link RicePrefixBlocks}.
+     */
+    RICE {
+        @Override
+        ShortPrefixSet create(int[] values) {
+            return RicePrefixBlocks.encode(values);
+        }
+    },
+    /**
+     * Plain sorted array of 4 bytes per prefix kept in a direct buffer outside of the Java heap; see
+     * {@link DirectIntArray}. Values are appended straight to the buffer.
+     */
+    DIRECT {
+        @Override
+        ShortPrefixSet create(int[] values) {
+            return new DirectIntArray(values);
+        }
+
+        @Override
+        ShortPrefixSet.Appender appender(int capacity) {
+            return DirectIntArray.appender(capacity);
+        }
+    };
+
+    /**
+     * Makes a set of prefixes in this representation.
+     *
+     * @param values sorted distinct values of prefixes
+     * @return set of prefixes
+     */
+    abstract ShortPrefixSet create(int[] values);
+
+    /**
+     * Makes an appender of values to a new set in this representation. Values are collected in an array and then the
+     * set is made of them unless the representation can take values directly.
+     *
+     * @param capacity max number of values to append
+     * @return appender of values
+     */
+    ShortPrefixSet.Appender appender(int capacity) {
+        int[] values = new int[capacity];
+        return new ShortPrefixSet.Appender() {
+            private int count;
+
+            @Override
+            public void add(int value) {
+                values[count++] = value;
+            }
+
+            @Override
+            public ShortPrefixSet build() {
+                return create(count == values.length ? values : Arrays.copyOf(values, count));
+            }
+        };
+    }
+
+    /**
+     * Gets storage by its configuration name.
+     *
+     * @param name name of the storage as in configuration properties
+     * @return storage
+     * @throws IllegalArgumentException if there is no storage with such name
+     */
+    static PrefixStorage forName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Set of 4-byte prefixes kept as Rice-delta coded blocks.
+ * <p>
+ * Sorted values are split into blocks of {@link #BLOCK_SIZE} values. First value of each block is kept uncompressed in
+ * a small sampled index. Remaining values of a block are coded as deltas from their predecessors with Rice-Golomb
+ * coding: quotient in unary as ones terminated by a zero, then remainder in binary, least significant bit first. Each
+ * block has its own Rice parameter derived from the average delta in the block which bounds the length of unary codes
+ * even when the values are not uniformly distributed. Blocks start on byte boundaries.
+ * <p>
+ * Prefixes of threat lists are evenly distributed hash values, so this takes about 2 bytes per prefix instead of 4 of a
+ * plain array. A lookup is a binary search in the index of the first values followed by decoding of a single block.
+ *
+ * @author azilet
+ */
+final class RicePrefixBlocks implements ShortPrefixSet {
+
+    static final int BLOCK_SIZE = 64;
+
+    private final int size;
+    private final int[] firstValues;
+    private final int[] offsets;
+    private final byte[] parameters;
+    private final byte[] data;
+
+    private RicePrefixBlocks(int size, int[] firstValues, int[] offsets, byte[] parameters, byte[] data) {
+        this.size = size;
+        this.firstValues = firstValues;
+        this.offsets = offsets;
+        this.parameters = parameters;
+        this.data = data;
+    }
+
+    /**
+     * Encodes sorted values.
+     *
+     * @param values sorted distinct values
+     * @return encoded set of values
+     */
+    static RicePrefixBlocks encode(int[] values) {
+        int blocks = (values.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] firstValues = new int[blocks];
+        int[] offsets = new int[blocks];
+        byte[] parameters = new byte[blocks];
+        BitWriter writer = new BitWriter(values.length * 2 + 16);
+        for (int block = 0; block < blocks; block++) {
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(start + BLOCK_SIZE, values.length);
+            int parameter = riceParameter(values[start], values[end - 1], end - start - 1);
+            firstValues[block] = values[start];
+            offsets[block] = writer.alignToByte();
+            parameters[block] = (byte) parameter;
+            for (int i = start + 1; i < end; i++) {
+                writer.writeRice((long) values[i] - values[i - 1], parameter);
+            }
+        }
+        return new RicePrefixBlocks(values.length, firstValues, offsets, parameters, writer.toByteArray());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int search(int key, int fromIndex) {
+        int fromBlock = fromIndex / BLOCK_SIZE;
+        if (fromBlock >= firstValues.length) {
+            return -(size + 1);
+        }
+        int pos = Arrays.binarySearch(firstValues, fromBlock, firstValues.length, key);
+        if (pos >= 0) {
+            return pos * BLOCK_SIZE;
+        }
+        int block = -(pos + 1) - 1;
+        if (block < fromBlock) {
+            return -(fromBlock * BLOCK_SIZE + 1);
+        }
+
+        int parameter = parameters[block];
+        int index = block * BLOCK_SIZE;
+        int end = Math.min(index + BLOCK_SIZE, size);
+        long bit = (long) offsets[block] << 3;
+        long value = firstValues[block];
+        while (++index < end) {
+            long quotient = 0;
+            while (isSet(bit++)) {
+                quotient++;
+            }
+            long remainder = 0;
+            for (int i = 0; i < parameter; i++) {
+                if (isSet(bit++)) {
+                    remainder |= 1L << i;
+                }
+            }
+            value += quotient << parameter | remainder;
+            if (value == key) {
+                return index;
+            } else if (value > key) {
+                return -(index + 1);
+            }
+        }
+        return -(end + 1);
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] values = new int[size];
+        PrimitiveIterator.OfInt it = iterator();
+        for (int i = 0; i < size; i++) {
+            values[i] = it.nextInt();
+        }
+        return values;
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+
+            private int index;
+            private long bit;
+            private long value;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                int block = index / BLOCK_SIZE;
+                if (index % BLOCK_SIZE == 0) {
+                    bit = (long) offsets[block] << 3;
+                    value = firstValues[block];
+                } else {
+                    int parameter = parameters[block];
+                    long quotient = 0;
+                    while (isSet(bit++)) {
+                        quotient++;
+                    }
+                    long remainder = 0;
+                    for (int i = 0; i < parameter; i++) {
+                        if (isSet(bit++)) {
+                            remainder |= 1L << i;
+                        }
+                    }
+                    value += quotient << parameter | remainder;
+                }
+                index++;
+                return (int) value;
+            }
+        };
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return data.length + (long) firstValues.length * (2 * Integer.BYTES + 1);
+    }
+
+    private boolean isSet(long bit) {
+        return (data[(int) (bit >>> 3)] >>> (bit & 7) & 1) != 0;
+    }
+
+    /**
+     * Gets Rice parameter for deltas between values of a block. Parameter is the floor of binary logarithm of the
+     * average delta, so quotients of deltas are 1 on average and never exceed twice the number of deltas.
+     */
+    private static int riceParameter(int first, int last, int deltas) {
+        if (deltas == 0) {
+            return 0;
+        }
+        long average = ((long) last - first) / deltas;
+        return average <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(average);
+    }
+
+    /**
+     * Growable bit stream where bits are written starting from the least significant bit of each byte.
+     */
+    private static class BitWriter {
+
+        private byte[] bytes;
+        private long position;
+
+        BitWriter(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        int alignToByte() {
+            position = (position + 7) & ~7L;
+            return (int) (position >>> 3);
+        }
+
+        void writeRice(long value, int parameter) {
+            for (long quotient = value >>> parameter; quotient > 0; quotient--) {
+                write(true);
+            }
+            write(false);
+            for (int i = 0; i < parameter; i++) {
+                write((value >>> i & 1) != 0);
+            }
+        }
+
+        private void write(boolean bit) {
+            int index = (int) (position >>> 3);
+            if (index == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            if (bit) {
+                bytes[index] |= 1 << (position & 7);
+            }
+            position++;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((position + 7) >>> 3));
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import kg.net.bazi.gsb4j.util.HashPrefixes;
+
+/**
+ * Cursor that merges sorted sections of fixed size prefixes into a single sequence in lexicographic order. There are
+ * only a few distinct prefix sizes in a threat list, so the smallest head is found by a linear scan of the sections.
+ *
+ * @author azilet
+ */
+final class SectionCursor implements PrefixCursor {
+
+    private final List<Section> sections;
+    private Section current;
+
+    /**
+     * Constructs a cursor over sections.
+     *
+     * @param sections sections of sorted prefixes; each section shall have prefixes of a single size
+     */
+    SectionCursor(List<Section> sections) {
+        this.sections = new ArrayList<>(sections);
+        this.sections.removeIf(s -> !s.advance());
+    }
+
+    @Override
+    public boolean next() {
+        if (current != null && !current.advance()) {
+            sections.remove(current);
+        }
+        current = null;
+        for (Section section : sections) {
+            if (current == null || HashPrefixes.compare(section.head, current.head) < 0) {
+                current = section;
+            }
+        }
+        return current != null;
+    }
+
+    @Override
+    public byte[] current() {
+        return current != null ? current.head : null;
+    }
+
+    @Override
+    public void close() {
+        sections.clear();
+        current = null;
+    }
+
+    /**
+     * Sorted prefixes of a single size. Head prefix is kept in an array which is overwritten on every advance.
+     */
+    abstract static class Section {
+
+        final byte[] head;
+
+        Section(int size) {
+            this.head = new byte[size];
+        }
+
+        /**
+         * Reads the next prefix into the head array.
+         *
+         * @return {@code true} if the next prefix is read; {@code false} if the section is exhausted
+         */
+        abstract boolean advance();
+
+        /**
+         * Makes a section of prefixes packed one after another in an array.
+         *
+         * @param size prefix size
+         * @param packed packed prefixes
+         * @return section of prefixes
+         */
+        static Section packed(int size, byte[] packed) {
+            return new Section(size) {
+
+                private int offset;
+
+                @Override
+                boolean advance() {
+                    if (offset >= packed.length) {
+                        return false;
+                    }
+                    System.arraycopy(packed, offset, head, 0, size);
+                    offset += size;
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Makes a section of prefixes packed one after another in a buffer. Position of the buffer is not changed.
+         *
+         * @param size prefix size
+         * @param packed packed prefixes between position and limit of the buffer
+         * @return section of prefixes
+         */
+        static Section packed(int size, ByteBuffer packed) {
+            ByteBuffer buffer = packed.duplicate();
+            return new Section(size) {
+
+                @Override
+                boolean advance() {
+                    if (buffer.remaining() < size) {
+                        return false;
+                    }
+                    buffer.get(head);
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Makes a section of 4-byte prefixes represented as integers with flipped sign bit.
+         *
+         * @param values sorted values of prefixes
+         * @return section of prefixes
+         */
+        static Section sortableInts(PrimitiveIterator.OfInt values) {
+            return new Section(PrefixIndex.SHORT_PREFIX_SIZE) {
+
+                @Override
+                boolean advance() {
+                    if (!values.hasNext()) {
+                        return false;
+                    }
+                    int value = values.nextInt() ^ Integer.MIN_VALUE;
+                    head[0] = (byte) (value >>> 24);
+                    head[1] = (byte) (value >>> 16);
+                    head[2] = (byte) (value >>> 8);
+                    head[3] = (byte) value;
+                    return true;
+                }
+            };
+        }
+    }
+
+}
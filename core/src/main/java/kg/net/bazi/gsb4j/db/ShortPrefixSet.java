@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * Immutable sorted set of 4-byte hash prefixes. Prefixes are represented as integers with flipped sign bit so that
+ * natural signed order of the values is the same as the lexicographic order of prefixes.
+ *
+ * @author azilet
+ */
+interface ShortPrefixSet {
+
+    /**
+     * Gets number of prefixes in this set.
+     *
+     * @return number of prefixes
+     */
+    int size();
+
+    /**
+     * Searches for a value the same way {@link java.util.Arrays#binarySearch(int[], int, int, int)} does. Searching
+     * starts from the supplied index which allows probing ascending values in a single pass.
+     *
+     * @param key value to look for
+     * @param fromIndex index to start from; all values before this index must be less than the key
+     * @return index of the value if found; otherwise {@code -(insertion point) - 1}
+     */
+    int search(int key, int fromIndex);
+
+    /**
+     * Gets all values of this set.
+     *
+     * @return sorted array of values
+     */
+    int[] toArray();
+
+    /**
+     * Iterates over values of this set without copying them.
+     *
+     * @return iterator over values in ascending order
+     */
+    PrimitiveIterator.OfInt iterator();
+
+    /**
+     * Gets approximate number of bytes this set takes in memory.
+     *
+     * @return size in bytes
+     */
+    long sizeInBytes();
+
+    /**
+     * Receives values of a new set one by one in ascending order and makes a set of them.
+     */
+    interface Appender {
+
+        /**
+         * Appends a value to the set being made.
+         *
+         * @param value value greater than all values appended before
+         */
+        void add(int value);
+
+        /**
+         * Makes a set of all appended values.
+         *
+         * @return set of values
+         */
+        ShortPrefixSet build();
+    }
+
+}
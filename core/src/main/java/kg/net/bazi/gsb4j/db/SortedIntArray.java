@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * Set of 4-byte prefixes kept as a plain sorted array. Lookups are binary searches on the array.
+ *
+ * @author azilet
+ */
+final class SortedIntArray implements ShortPrefixSet {
+
+    private final int[] values;
+
+    /**
+     * Constructs a new set.
+     *
+     * @param values sorted distinct values; array is not copied
+     */
+    SortedIntArray(int[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int search(int key, int fromIndex) {
+        return Arrays.binarySearch(values, fromIndex, values.length, key);
+    }
+
+    @Override
+    public int[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return Arrays.stream(values).iterator();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return (long) values.length * Integer.BYTES;
+    }
+
+}
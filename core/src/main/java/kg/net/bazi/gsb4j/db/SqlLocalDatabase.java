@@ -17,17 +17,23 @@
 package kg.net.bazi.gsb4j.db;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -39,35 +45,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * SQL database backed implementation of {@link LocalDatabase}.
+ * SQL database backed implementation of {@link LocalDatabase}. Hash prefixes are stored as raw bytes in BLOB columns;
+ * see {@link SqlSchemaMigration} for conversion of databases created by earlier versions.
+ * <p>
+ * Lookups use read-only data source while updates and schema changes go through the data source for writes.
  *
  * @author azilet
  */
+@Singleton
 class SqlLocalDatabase implements LocalDatabase {
 
     static final int BATCH_SIZE = 50 * 1000;
 
+    /**
+     * Suffix of staging tables where hashes are loaded before they replace live tables.
+     */
+    static final String STAGING_SUFFIX = "_STAGING";
+
+    /**
+     * Max number of parameters in a single IN clause. SQLite limits number of host parameters in a statement to 999 by
+     * default.
+     */
+    static final int MAX_IN_PARAMS = 500;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SqlLocalDatabase.class);
 
-    private static final Set<ThreatListDescriptor> CREATED_TABLES = new HashSet<>();
-    private static final Lock LOCK = new ReentrantLock();
+    // tables are tracked per instance because each instance may work with a different data source; the set is read
+    // without locking by lookups and written by updates running in parallel
+    private final Set<ThreatListDescriptor> createdTables = ConcurrentHashMap.newKeySet();
+    private final Lock lock = new ReentrantLock();
 
     @Inject
     @Gsb4jBinding
     DataSource dataSource;
 
-    @Override
-    public List<String> load(ThreatListDescriptor descriptor) throws IOException {
-        checkTableForDescriptor(descriptor);
+    @Inject
+    @ReadOnly
+    DataSource readDataSource;
 
+    @Override
+    public List<byte[]> load(ThreatListDescriptor descriptor) throws IOException {
         String sql = "SELECT prefix FROM " + descriptor + " ORDER BY prefix";
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql);
-            ResultSet rs = ps.executeQuery()) {
-
-            List<String> result = new LinkedList<>();
-            while (rs.next()) {
-                result.add(rs.getString(1));
+        try (Connection conn = readDataSource.getConnection()) {
+            List<byte[]> result = new ArrayList<>();
+            if (tableExists(conn, descriptor)) {
+                try (PreparedStatement ps = conn.prepareStatement(sql);
+                    ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(rs.getBytes(1));
+                    }
+                }
             }
             LOGGER.info("Loaded {} items", result.size());
             return result;
@@ -77,25 +104,49 @@ class SqlLocalDatabase implements LocalDatabase {
     }
 
     @Override
-    public void persist(ThreatListDescriptor descriptor, List<String> hashes) throws IOException {
-        checkTableForDescriptor(descriptor);
+    public PrefixCursor cursor(ThreatListDescriptor descriptor) throws IOException {
+        String sql = "SELECT prefix FROM " + descriptor + " ORDER BY prefix";
+        Connection conn = null;
+        try {
+            conn = readDataSource.getConnection();
+            if (!tableExists(conn, descriptor)) {
+                conn.close();
+                return PrefixCursor.of(Collections.emptyList());
+            }
+            PreparedStatement ps = conn.prepareStatement(sql);
+            return new ResultSetCursor(conn, ps.executeQuery());
+        } catch (SQLException ex) {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+            }
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void persist(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        createTableIfMissing(descriptor);
 
         String sql = "INSERT INTO " + descriptor + " VALUES (?)";
         try (Connection conn = dataSource.getConnection();
             PreparedStatement ps = conn.prepareStatement(sql)) {
             int offset = 0;
-            int inserted = 0;
-            for (String hash : hashes) {
-                ps.setString(1, hash);
-                inserted += ps.executeUpdate();
+            for (byte[] hash : hashes) {
+                ps.setBytes(1, hash);
+                ps.addBatch();
                 if (++offset == BATCH_SIZE) {
+                    int inserted = sum(ps.executeBatch());
                     conn.commit();
                     LOGGER.info("Inserted {} item(s)", inserted);
                     offset = 0;
-                    inserted = 0;
                 }
             }
             if (offset > 0) {
+                int inserted = sum(ps.executeBatch());
                 conn.commit();
                 LOGGER.info("Inserted {} item(s)", inserted);
             }
@@ -104,20 +155,120 @@ class SqlLocalDatabase implements LocalDatabase {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Hashes are bulk loaded into a staging table which is then renamed over the live table of the descriptor. All of
+     * it is done in a single transaction, so lookups see old hashes until new ones are completely loaded.
+     */
     @Override
-    public boolean contains(String hash, ThreatListDescriptor descriptor) throws IOException {
-        checkTableForDescriptor(descriptor);
+    public void replace(ThreatListDescriptor descriptor, List<byte[]> hashes) throws IOException {
+        createTableIfMissing(descriptor);
+
+        String staging = descriptor + STAGING_SUFFIX;
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS " + staging);
+                st.execute(makeCreateTableSql(staging));
 
+                int inserted = 0;
+                try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + staging + " VALUES (?)")) {
+                    int offset = 0;
+                    for (byte[] hash : hashes) {
+                        ps.setBytes(1, hash);
+                        ps.addBatch();
+                        if (++offset == BATCH_SIZE) {
+                            inserted += sum(ps.executeBatch());
+                            offset = 0;
+                        }
+                    }
+                    inserted += sum(ps.executeBatch());
+                }
+
+                st.execute("DROP TABLE " + descriptor);
+                st.execute("ALTER TABLE " + staging + " RENAME TO " + descriptor);
+                conn.commit();
+                LOGGER.info("Table {} replaced with {} item(s)", descriptor, inserted);
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void update(ThreatListDescriptor descriptor, List<byte[]> removals, List<byte[]> additions)
+        throws IOException {
+        createTableIfMissing(descriptor);
+
+        try (Connection conn = dataSource.getConnection()) {
+            try {
+                int deleted = executeForEach(conn, "DELETE FROM " + descriptor + " WHERE prefix=?", removals);
+                int inserted = executeForEach(conn, "INSERT INTO " + descriptor + " VALUES (?)", additions);
+                conn.commit();
+                LOGGER.info("Deleted {} and inserted {} item(s)", deleted, inserted);
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public boolean contains(byte[] hash, ThreatListDescriptor descriptor) throws IOException {
         String sql = "SELECT prefix FROM " + descriptor + " WHERE prefix=?";
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, hash);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+        try (Connection conn = readDataSource.getConnection()) {
+            if (!tableExists(conn, descriptor)) {
+                return false;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setBytes(1, hash);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public Map<ThreatListDescriptor, List<byte[]>> findMatches(Collection<byte[]> hashes,
+        Collection<ThreatListDescriptor> descriptors) throws IOException {
+        // wrap hashes into buffers which have content based equality to map query results back to supplied instances
+        Map<ByteBuffer, byte[]> instances = new HashMap<>();
+        hashes.forEach(h -> instances.put(ByteBuffer.wrap(h), h));
+        List<byte[]> ls = new ArrayList<>(instances.values());
+
+        Map<ThreatListDescriptor, List<byte[]>> matches = new HashMap<>();
+        if (ls.isEmpty()) {
+            return matches;
+        }
+        try (Connection conn = readDataSource.getConnection()) {
+            for (ThreatListDescriptor descriptor : descriptors) {
+                // lists that were never written have no tables; tables are created by updates only
+                if (!tableExists(conn, descriptor)) {
+                    continue;
+                }
+                List<byte[]> found = new ArrayList<>();
+                for (int from = 0; from < ls.size(); from += MAX_IN_PARAMS) {
+                    List<byte[]> chunk = ls.subList(from, Math.min(from + MAX_IN_PARAMS, ls.size()));
+                    for (byte[] hash : selectExisting(conn, descriptor, chunk)) {
+                        found.add(instances.get(ByteBuffer.wrap(hash)));
+                    }
+                }
+                if (!found.isEmpty()) {
+                    matches.put(descriptor, found);
+                }
             }
         } catch (SQLException ex) {
             throw new IOException(ex);
         }
+        return matches;
     }
 
     @Override
@@ -126,11 +277,11 @@ class SqlLocalDatabase implements LocalDatabase {
             Statement st = conn.createStatement()) {
             st.execute("DROP TABLE IF EXISTS " + descriptor);
             conn.commit();
-            LOCK.lock();
+            lock.lock();
             try {
-                CREATED_TABLES.remove(descriptor);
+                createdTables.remove(descriptor);
             } finally {
-                LOCK.unlock();
+                lock.unlock();
             }
         } catch (SQLException ex) {
             throw new IOException(ex);
@@ -138,16 +289,63 @@ class SqlLocalDatabase implements LocalDatabase {
         LOGGER.info("Table {} dropped", descriptor);
     }
 
-    private void checkTableForDescriptor(ThreatListDescriptor descriptor) throws IOException {
-        if (CREATED_TABLES.contains(descriptor)) {
+    private List<byte[]> selectExisting(Connection conn, ThreatListDescriptor descriptor, List<byte[]> hashes)
+        throws SQLException {
+        String params = String.join(",", Collections.nCopies(hashes.size(), "?"));
+        String sql = "SELECT prefix FROM " + descriptor + " WHERE prefix IN (" + params + ")";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < hashes.size(); i++) {
+                ps.setBytes(i + 1, hashes.get(i));
+            }
+            List<byte[]> result = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getBytes(1));
+                }
+            }
+            return result;
+        }
+    }
+
+    private int executeForEach(Connection conn, String sql, List<byte[]> hashes) throws SQLException {
+        int updated = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (byte[] hash : hashes) {
+                ps.setBytes(1, hash);
+                updated += ps.executeUpdate();
+            }
+        }
+        return updated;
+    }
+
+    private boolean tableExists(Connection conn, ThreatListDescriptor descriptor) throws SQLException {
+        if (createdTables.contains(descriptor)) {
+            return true;
+        }
+        String sql = "SELECT name FROM sqlite_master WHERE type='table' AND name=?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, descriptor.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                // not added to created tables; only writers track them so that a dropped table is always recreated
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Creates table of the descriptor if it does not exist. Only writes shall call this method; lookups do not go
+     * through the writer pool and they treat a missing table as an empty list.
+     */
+    private void createTableIfMissing(ThreatListDescriptor descriptor) throws IOException {
+        if (createdTables.contains(descriptor)) {
             return;
         }
-        Lock ref = LOCK;
+        Lock ref = lock;
         ref.lock();
         try {
-            if (!CREATED_TABLES.contains(descriptor)) {
+            if (!createdTables.contains(descriptor)) {
                 createTable(descriptor);
-                CREATED_TABLES.add(descriptor);
+                createdTables.add(descriptor);
             }
         } catch (SQLException ex) {
             throw new IOException(ex);
@@ -157,8 +355,7 @@ class SqlLocalDatabase implements LocalDatabase {
     }
 
     private void createTable(ThreatListDescriptor descriptor) throws SQLException {
-        String sql = "CREATE TABLE IF NOT EXISTS " + descriptor
-            + " (prefix TEXT CONSTRAINT pk PRIMARY KEY ASC ON CONFLICT REPLACE)";
+        String sql = makeCreateTableSql(descriptor.toString());
         try (Connection conn = dataSource.getConnection();
             PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.execute();
@@ -166,4 +363,57 @@ class SqlLocalDatabase implements LocalDatabase {
         }
     }
 
+    private static String makeCreateTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table
+            + " (prefix BLOB CONSTRAINT pk PRIMARY KEY ASC ON CONFLICT REPLACE)";
+    }
+
+    private static int sum(int[] updateCounts) {
+        int sum = 0;
+        for (int count : updateCounts) {
+            // drivers may report success without number of affected rows
+            sum += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return sum;
+    }
+
+    /**
+     * Cursor that streams rows of a result set. Connection of the result set is released when the cursor is closed.
+     */
+    private static class ResultSetCursor implements PrefixCursor {
+
+        private final Connection conn;
+        private final ResultSet rs;
+        private byte[] current;
+
+        ResultSetCursor(Connection conn, ResultSet rs) {
+            this.conn = conn;
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            try {
+                current = rs.next() ? rs.getBytes(1) : null;
+                return current != null;
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public byte[] current() {
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (Connection c = conn) {
+                rs.close();
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
 }
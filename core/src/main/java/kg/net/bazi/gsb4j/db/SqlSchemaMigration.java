@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Migrates schema of SQL local database to the current version. Schema version is kept in {@code user_version} pragma
+ * of the SQLite database.
+ * <p>
+ * Version 0 stored hash prefixes as hex encoded text which doubled the size of the database and its indices. Since
+ * version 1 hash prefixes are stored as raw bytes in BLOB columns. Tables of version 0 are converted in a single
+ * transaction so that a failed migration leaves the database intact.
+ *
+ * @author azilet
+ */
+final class SqlSchemaMigration {
+
+    /**
+     * Current version of the database schema.
+     */
+    static final int SCHEMA_VERSION = 1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlSchemaMigration.class);
+
+    private SqlSchemaMigration() {
+    }
+
+    /**
+     * Migrates database schema to the current version if needed.
+     *
+     * @param dataSource data source of the database to migrate
+     * @throws SQLException when database errors occur
+     */
+    static void migrate(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            int version = getSchemaVersion(conn);
+            if (version >= SCHEMA_VERSION) {
+                return;
+            }
+            try {
+                for (String table : getTables(conn)) {
+                    if (isTextPrefixTable(conn, table)) {
+                        convertToBlob(conn, table);
+                    }
+                }
+                try (Statement st = conn.createStatement()) {
+                    st.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+                }
+                conn.commit();
+                LOGGER.info("Database schema migrated from version {} to {}", version, SCHEMA_VERSION);
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    static int getSchemaVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static List<String> getTables(Connection conn) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE type='table'")) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        return tables;
+    }
+
+    private static boolean isTextPrefixTable(Connection conn, String table) throws SQLException {
+        try (Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if ("prefix".equals(rs.getString("name"))) {
+                    return "TEXT".equalsIgnoreCase(rs.getString("type"));
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void convertToBlob(Connection conn, String table) throws SQLException {
+        String old = table + "_v0";
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE " + table + " RENAME TO " + old);
+            st.execute("CREATE TABLE " + table + " (prefix BLOB CONSTRAINT pk PRIMARY KEY ASC ON CONFLICT REPLACE)");
+        }
+
+        int count = 0;
+        try (Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT prefix FROM " + old);
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO " + table + " VALUES (?)")) {
+            while (rs.next()) {
+                ps.setBytes(1, Hex.decodeHex(rs.getString(1).toCharArray()));
+                ps.addBatch();
+                if (++count % SqlLocalDatabase.BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        } catch (DecoderException ex) {
+            throw new SQLException("Invalid hash prefix in table " + table, ex);
+        }
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE " + old);
+        }
+        LOGGER.info("Converted {} hash prefixes of table {}", count, table);
+    }
+
+}
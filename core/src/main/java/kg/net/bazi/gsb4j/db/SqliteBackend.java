@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.google.inject.Injector;
+
+/**
+ * Backend where threat lists are stored and looked up in SQLite database.
+ *
+ * @author azilet
+ */
+public final class SqliteBackend implements LocalDatabaseBackend {
+
+    /**
+     * Name of the backend.
+     */
+    public static final String NAME = "sqlite";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public LocalDatabase create(Injector injector) {
+        return injector.getInstance(SqlLocalDatabase.class);
+    }
+
+}
@@ -61,4 +61,83 @@ class Gsb4jFileProperties implements Gsb4jProperties {
         return Gsb4jProperties.getDefaultDataDirectory();
     }
 
+    @Override
+    public String getDatabaseBackend() {
+        return properties.getProperty(Gsb4jPropertyKeys.DB_BACKEND, DEFAULT_DB_BACKEND);
+    }
+
+    @Override
+    public boolean isDatabaseFilterEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(Gsb4jPropertyKeys.DB_FILTER_ENABLED));
+    }
+
+    @Override
+    public double getDatabaseFilterFalsePositiveRate() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.DB_FILTER_FALSE_POSITIVE_RATE);
+        return value != null ? Double.parseDouble(value) : DEFAULT_DB_FILTER_FALSE_POSITIVE_RATE;
+    }
+
+    @Override
+    public int getDatabaseFilterMaxBytes() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.DB_FILTER_MAX_BYTES);
+        return value != null ? Integer.parseInt(value) : DEFAULT_DB_FILTER_MAX_BYTES;
+    }
+
+    @Override
+    public String getMemoryStorage() {
+        return properties.getProperty(Gsb4jPropertyKeys.DB_MEMORY_STORAGE, DEFAULT_DB_MEMORY_STORAGE);
+    }
+
+    @Override
+    public int getDatabaseReaderPoolSize() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.DB_READER_POOL_SIZE);
+        return value != null ? Integer.parseInt(value) : DEFAULT_DB_READER_POOL_SIZE;
+    }
+
+    @Override
+    public int getDatabaseWriterPoolSize() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.DB_WRITER_POOL_SIZE);
+        return value != null ? Integer.parseInt(value) : DEFAULT_DB_WRITER_POOL_SIZE;
+    }
+
+    @Override
+    public int getUpdateWorkers() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.UPDATE_WORKERS);
+        return value != null ? Integer.parseInt(value) : DEFAULT_UPDATE_WORKERS;
+    }
+
+    @Override
+    public long getUpdateInterval() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.UPDATE_INTERVAL);
+        return value != null ? Long.parseLong(value) : DEFAULT_UPDATE_INTERVAL;
+    }
+
+    @Override
+    public int getMaxDatabaseEntries() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.UPDATE_MAX_DATABASE_ENTRIES);
+        return value != null ? Integer.parseInt(value) : DEFAULT_UPDATE_MAX_DATABASE_ENTRIES;
+    }
+
+    @Override
+    public int getMaxUpdateEntries() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.UPDATE_MAX_UPDATE_ENTRIES);
+        return value != null ? Integer.parseInt(value) : DEFAULT_UPDATE_MAX_UPDATE_ENTRIES;
+    }
+
+    @Override
+    public long getUpdateMemoryBudget() {
+        String value = properties.getProperty(Gsb4jPropertyKeys.UPDATE_MEMORY_BUDGET);
+        return value != null ? Long.parseLong(value) : DEFAULT_UPDATE_MEMORY_BUDGET;
+    }
+
+    @Override
+    public String getIncludedLists() {
+        return properties.getProperty(Gsb4jPropertyKeys.LISTS_INCLUDE);
+    }
+
+    @Override
+    public String getExcludedLists() {
+        return properties.getProperty(Gsb4jPropertyKeys.LISTS_EXCLUDE);
+    }
+
 }
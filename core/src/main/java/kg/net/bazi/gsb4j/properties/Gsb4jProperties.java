@@ -31,6 +31,61 @@ import kg.net.bazi.gsb4j.Gsb4j;
 @ImplementedBy(Gsb4jSystemProperties.class)
 public interface Gsb4jProperties {
 
+    /**
+     * Default local database backend name.
+     */
+    String DEFAULT_DB_BACKEND = "memory";
+
+    /**
+     * Default false positive rate of local database filters.
+     */
+    double DEFAULT_DB_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Default max size of a local database filter of a single threat list: 8 MiB.
+     */
+    int DEFAULT_DB_FILTER_MAX_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Default storage of hash prefixes in in-memory indices of the {@code memory} backend.
+     */
+    String DEFAULT_DB_MEMORY_STORAGE = "array";
+
+    /**
+     * Default max number of read-only connections to SQL local database.
+     */
+    int DEFAULT_DB_READER_POOL_SIZE = 10;
+
+    /**
+     * Default max number of connections to SQL local database used for writes.
+     */
+    int DEFAULT_DB_WRITER_POOL_SIZE = 1;
+
+    /**
+     * Default number of threads that apply threat list updates concurrently.
+     */
+    int DEFAULT_UPDATE_WORKERS = 4;
+
+    /**
+     * Default interval in seconds between list updates.
+     */
+    long DEFAULT_UPDATE_INTERVAL = 600;
+
+    /**
+     * Default max number of entries of a threat list in local database; zero means no limit.
+     */
+    int DEFAULT_UPDATE_MAX_DATABASE_ENTRIES = 0;
+
+    /**
+     * Default max number of entries in a single update of a threat list; zero means no limit.
+     */
+    int DEFAULT_UPDATE_MAX_UPDATE_ENTRIES = 0;
+
+    /**
+     * Default memory budget of threat lists; zero means no budget.
+     */
+    long DEFAULT_UPDATE_MEMORY_BUDGET = 0;
+
     /**
      * Gets API key.
      *
@@ -52,6 +107,115 @@ public interface Gsb4jProperties {
      */
     Path getDataDirectory();
 
+    /**
+     * Gets name of the local database backend used by Update API.
+     *
+     * @return local database backend name; defaults to {@link #DEFAULT_DB_BACKEND}
+     */
+    String getDatabaseBackend();
+
+    /**
+     * Checks if lookups to local database shall be filtered by Bloom filters of threat lists.
+     *
+     * @return {@code true} if filters are enabled; defaults to {@code false}
+     */
+    boolean isDatabaseFilterEnabled();
+
+    /**
+     * Gets desired false positive rate of local database filters.
+     *
+     * @return false positive rate; defaults to {@link #DEFAULT_DB_FILTER_FALSE_POSITIVE_RATE}
+     */
+    double getDatabaseFilterFalsePositiveRate();
+
+    /**
+     * Gets max size in bytes of a local database filter of a single threat list. Filters that would exceed this size
+     * are made smaller at the cost of higher false positive rate.
+     *
+     * @return max filter size in bytes; defaults to {@link #DEFAULT_DB_FILTER_MAX_BYTES}
+     */
+    int getDatabaseFilterMaxBytes();
+
+    /**
+     * Gets storage of hash prefixes in in-memory indices of the {@code memory} backend: {@code array},
+     * {@code rice} or {@code direct}.
+     *
+     * @return storage name; defaults to {@link #DEFAULT_DB_MEMORY_STORAGE}
+     */
+    String getMemoryStorage();
+
+    /**
+     * Gets max number of read-only connections to SQL local database which serve lookups.
+     *
+     * @return pool size; defaults to {@link #DEFAULT_DB_READER_POOL_SIZE}
+     */
+    int getDatabaseReaderPoolSize();
+
+    /**
+     * Gets max number of connections to SQL local database which serve updates. SQLite allows a single writer at a
+     * time, so more than one connection only makes writers wait for each other.
+     *
+     * @return pool size; defaults to {@link #DEFAULT_DB_WRITER_POOL_SIZE}
+     */
+    int getDatabaseWriterPoolSize();
+
+    /**
+     * Gets number of threads that apply threat list updates concurrently. Each threat list is decoded, verified, and
+     * written on its own, so lists of a single update response are applied independently of each other.
+     *
+     * @return number of update threads; defaults to {@link #DEFAULT_UPDATE_WORKERS}
+     */
+    int getUpdateWorkers();
+
+    /**
+     * Gets interval between list updates. It is used when API response sets no minimum wait duration; otherwise next
+     * update is made as soon as minimum wait duration expires.
+     *
+     * @return interval in seconds; defaults to {@link #DEFAULT_UPDATE_INTERVAL}
+     */
+    long getUpdateInterval();
+
+    /**
+     * Gets max number of entries of a threat list that client is willing to keep in local database. API expects a
+     * power of 2 between 2<sup>10</sup> and 2<sup>20</sup>; other values are rounded to the nearest such value below.
+     *
+     * @return max number of entries; zero if not limited; defaults to {@link #DEFAULT_UPDATE_MAX_DATABASE_ENTRIES}
+     */
+    int getMaxDatabaseEntries();
+
+    /**
+     * Gets max number of entries in a single update of a threat list that client is willing to receive. API expects a
+     * power of 2 between 2<sup>10</sup> and 2<sup>20</sup>; other values are rounded to the nearest such value below.
+     *
+     * @return max number of entries; zero if not limited; defaults to {@link #DEFAULT_UPDATE_MAX_UPDATE_ENTRIES}
+     */
+    int getMaxUpdateEntries();
+
+    /**
+     * Gets memory budget of threat lists kept and updated by Update API. When estimated memory footprint of threat
+     * lists exceeds the budget, database size limits requested from API are tightened.
+     *
+     * @return memory budget in bytes; zero if there is no budget; defaults to {@link #DEFAULT_UPDATE_MEMORY_BUDGET}
+     */
+    long getUpdateMemoryBudget();
+
+    /**
+     * Gets threat lists used by Update API. Value is a comma separated list of patterns in the form of
+     * {@code THREAT_TYPE/PLATFORM_TYPE} where either part may be {@code *}; a pattern without platform type matches all
+     * platform types. For example, {@code MALWARE/ANY_PLATFORM, SOCIAL_ENGINEERING}.
+     *
+     * @return patterns of included threat lists; {@code null} if all threat lists are included
+     */
+    String getIncludedLists();
+
+    /**
+     * Gets threat lists excluded from Update API. Value is in the same form as of {@link #getIncludedLists()}.
+     * Exclusions are applied after inclusions.
+     *
+     * @return patterns of excluded threat lists; {@code null} if no threat lists are excluded
+     */
+    String getExcludedLists();
+
     /**
      * Gets default local data directory. This is directory in user's home directory.
      *
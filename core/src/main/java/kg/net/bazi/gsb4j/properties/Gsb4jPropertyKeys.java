@@ -38,6 +38,77 @@ public class Gsb4jPropertyKeys {
      */
     public static final String DATA_DIRECTORY = "data.dir";
 
+    /**
+     * Configuration property name for local database backend used by Update API.
+     */
+    public static final String DB_BACKEND = "db.backend";
+
+    /**
+     * Configuration property name to enable Bloom filters in front of local database.
+     */
+    public static final String DB_FILTER_ENABLED = "db.filter.enabled";
+
+    /**
+     * Configuration property name for false positive rate of local database filters.
+     */
+    public static final String DB_FILTER_FALSE_POSITIVE_RATE = "db.filter.fpr";
+
+    /**
+     * Configuration property name for max size in bytes of a local database filter of a single threat list.
+     */
+    public static final String DB_FILTER_MAX_BYTES = "db.filter.max.bytes";
+
+    /**
+     * Configuration property name for storage of hash prefixes in in-memory indices of the memory backend.
+     */
+    public static final String DB_MEMORY_STORAGE = "db.memory.storage";
+
+    /**
+     * Configuration property name for max number of read-only connections to SQL local database.
+     */
+    public static final String DB_READER_POOL_SIZE = "db.reader.pool.size";
+
+    /**
+     * Configuration property name for max number of connections to SQL local database used for writes.
+     */
+    public static final String DB_WRITER_POOL_SIZE = "db.writer.pool.size";
+
+    /**
+     * Configuration property name for number of threads that apply threat list updates concurrently.
+     */
+    public static final String UPDATE_WORKERS = "update.workers";
+
+    /**
+     * Configuration property name for interval in seconds between list updates when API sets no minimum wait duration.
+     */
+    public static final String UPDATE_INTERVAL = "update.interval";
+
+    /**
+     * Configuration property name for max number of entries of a threat list in local database.
+     */
+    public static final String UPDATE_MAX_DATABASE_ENTRIES = "update.max.database.entries";
+
+    /**
+     * Configuration property name for max number of entries in a single update of a threat list.
+     */
+    public static final String UPDATE_MAX_UPDATE_ENTRIES = "update.max.update.entries";
+
+    /**
+     * Configuration property name for memory budget in bytes of threat lists kept and updated by Update API.
+     */
+    public static final String UPDATE_MEMORY_BUDGET = "update.memory.budget";
+
+    /**
+     * Configuration property name for threat lists used by Update API; lists not matching are neither updated nor
+     * looked up.
+     */
+    public static final String LISTS_INCLUDE = "lists.include";
+
+    /**
+     * Configuration property name for threat lists excluded from Update API.
+     */
+    public static final String LISTS_EXCLUDE = "lists.exclude";
+
     private Gsb4jPropertyKeys() {
         // not to be initialized
     }
@@ -52,4 +52,76 @@ class Gsb4jSystemProperties implements Gsb4jProperties {
         }
         return Gsb4jProperties.getDefaultDataDirectory();
     }
+
+    @Override
+    public String getDatabaseBackend() {
+        return System.getProperty(Gsb4jPropertyKeys.DB_BACKEND, DEFAULT_DB_BACKEND);
+    }
+
+    @Override
+    public boolean isDatabaseFilterEnabled() {
+        return Boolean.getBoolean(Gsb4jPropertyKeys.DB_FILTER_ENABLED);
+    }
+
+    @Override
+    public double getDatabaseFilterFalsePositiveRate() {
+        String value = System.getProperty(Gsb4jPropertyKeys.DB_FILTER_FALSE_POSITIVE_RATE);
+        return value != null ? Double.parseDouble(value) : DEFAULT_DB_FILTER_FALSE_POSITIVE_RATE;
+    }
+
+    @Override
+    public int getDatabaseFilterMaxBytes() {
+        return Integer.getInteger(Gsb4jPropertyKeys.DB_FILTER_MAX_BYTES, DEFAULT_DB_FILTER_MAX_BYTES);
+    }
+
+    @Override
+    public String getMemoryStorage() {
+        return System.getProperty(Gsb4jPropertyKeys.DB_MEMORY_STORAGE, DEFAULT_DB_MEMORY_STORAGE);
+    }
+
+    @Override
+    public int getDatabaseReaderPoolSize() {
+        return Integer.getInteger(Gsb4jPropertyKeys.DB_READER_POOL_SIZE, DEFAULT_DB_READER_POOL_SIZE);
+    }
+
+    @Override
+    public int getDatabaseWriterPoolSize() {
+        return Integer.getInteger(Gsb4jPropertyKeys.DB_WRITER_POOL_SIZE, DEFAULT_DB_WRITER_POOL_SIZE);
+    }
+
+    @Override
+    public int getUpdateWorkers() {
+        return Integer.getInteger(Gsb4jPropertyKeys.UPDATE_WORKERS, DEFAULT_UPDATE_WORKERS);
+    }
+
+    @Override
+    public long getUpdateInterval() {
+        return Long.getLong(Gsb4jPropertyKeys.UPDATE_INTERVAL, DEFAULT_UPDATE_INTERVAL);
+    }
+
+    @Override
+    public int getMaxDatabaseEntries() {
+        return Integer.getInteger(Gsb4jPropertyKeys.UPDATE_MAX_DATABASE_ENTRIES, DEFAULT_UPDATE_MAX_DATABASE_ENTRIES);
+    }
+
+    @Override
+    public int getMaxUpdateEntries() {
+        return Integer.getInteger(Gsb4jPropertyKeys.UPDATE_MAX_UPDATE_ENTRIES, DEFAULT_UPDATE_MAX_UPDATE_ENTRIES);
+    }
+
+    @Override
+    public long getUpdateMemoryBudget() {
+        return Long.getLong(Gsb4jPropertyKeys.UPDATE_MEMORY_BUDGET, DEFAULT_UPDATE_MEMORY_BUDGET);
+    }
+
+    @Override
+    public String getIncludedLists() {
+        return System.getProperty(Gsb4jPropertyKeys.LISTS_INCLUDE);
+    }
+
+    @Override
+    public String getExcludedLists() {
+        return System.getProperty(Gsb4jPropertyKeys.LISTS_EXCLUDE);
+    }
+
 }
@@ -16,10 +16,19 @@
 
 package kg.net.bazi.gsb4j.url;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
 /**
  * Class that computes hash prefixes of the suffix/prefix expressions.
+ * <p>
+ * Lookups need prefixes of several lengths of the same expression. Callers should compute the raw hash of an
+ * expression once with {@link #computeRawHash(String)} and take leading bytes of it rather than hashing the
+ * expression for each prefix length.
  *
  * @author azilet
  */
@@ -34,6 +43,8 @@ public class Hashing {
      */
     public static final int MAX_SIGNIFICANT_BYTES = 32;
 
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(DigestUtils::getSha256Digest);
+
     /**
      * Computes hash prefix for the expression that includes supplied number of most significant bytes.
      *
@@ -44,8 +55,18 @@ public class Hashing {
     public String computeHashPrefix(String expression, int significantBytes) {
         checkSignificantBytes(significantBytes);
 
-        int hexDigitsLength = significantBytes * 2;
-        return DigestUtils.sha256Hex(expression).substring(0, hexDigitsLength);
+        return Hex.encodeHexString(Arrays.copyOf(computeRawHash(expression), significantBytes));
+    }
+
+    /**
+     * Computes full-length SHA-256 hash of the expression.
+     *
+     * @param expression expression to compute hash for
+     * @return 32 bytes of the hash
+     */
+    public byte[] computeRawHash(String expression) {
+        MessageDigest sha256 = SHA256.get();
+        return sha256.digest(expression.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -55,7 +76,7 @@ public class Hashing {
      * @return full hash encoded in hex
      */
     public String computeFullHash(String expression) {
-        return DigestUtils.sha256Hex(expression);
+        return Hex.encodeHexString(computeRawHash(expression));
     }
 
     private void checkSignificantBytes(int significantBytes) {
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.util;
+
+import java.util.Comparator;
+
+/**
+ * Utility methods for raw hash prefixes.
+ *
+ * @author azilet
+ */
+public final class HashPrefixes {
+
+    /**
+     * Comparator that orders hash prefixes lexicographically treating bytes as unsigned values. This is the order of
+     * hash prefixes in threat lists as defined by the API.
+     */
+    public static final Comparator<byte[]> LEXICOGRAPHIC_ORDER = HashPrefixes::compare;
+
+    private HashPrefixes() {
+        // not to be initialized
+    }
+
+    /**
+     * Compares hash prefixes lexicographically treating bytes as unsigned values. Shorter prefix goes first if it is a
+     * prefix of the longer one.
+     *
+     * @param a first prefix
+     * @param b second prefix
+     * @return negative, zero, or positive value as the first prefix is less than, equal to, or greater than the second
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+}
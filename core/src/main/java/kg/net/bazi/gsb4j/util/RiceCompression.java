@@ -16,70 +16,98 @@
 
 package kg.net.bazi.gsb4j.util;
 
-import java.util.BitSet;
-import java.util.LinkedList;
-import java.util.List;
-
 /**
  * Rice compression handler.
+ * <p>
+ * Rice-Golomb coded data is a sequence of deltas between sorted integer values. Each delta is coded as a quotient in
+ * unary, that is as a number of ones terminated by a zero, followed by a remainder of fixed number of bits given by the
+ * Rice parameter. Bits are packed starting from the least significant bit of each byte and the remainder is also
+ * coded starting from its least significant bit.
  *
  * @author azilet
  */
 public class RiceCompression {
 
-    public static final int BYTE_BITS_SIZE = 8;
-
     /**
-     * Decompresses Rice coded bytes to integers. Note that bytes shall represent 4-byte values. That is the reason
-     * decompressed values are returned as integers.
+     * Decodes Rice coded deltas to integers. Values are 4-byte unsigned integers which are returned as Java integers,
+     * i.e. values above {@link Integer#MAX_VALUE} are negative.
      *
-     * @param riceParameter Rice parameter
-     * @param data compressed bytes
-     * @return decompressed data as integers
+     * @param firstValue first value which is not coded
+     * @param riceParameter Rice parameter; number of bits of remainders
+     * @param numEntries number of coded deltas
+     * @param data coded deltas
+     * @return decoded values: the first value followed by values computed by adding deltas one after another
+     * @throws IllegalArgumentException if Rice parameter is out of range or data ends before all deltas are decoded
      */
-    public List<Integer> decompress(int riceParameter, byte[] data) {
-        BitSet bits = new BitSet(data.length * 8);
+    public int[] decode(int firstValue, int riceParameter, int numEntries, byte[] data) {
+        if (riceParameter < 0 || riceParameter >= Integer.SIZE) {
+            throw new IllegalArgumentException("Invalid Rice parameter: " + riceParameter);
+        }
+        int[] values = new int[numEntries + 1];
+        values[0] = firstValue;
+        BitReader reader = new BitReader(data);
+        for (int i = 1; i <= numEntries; i++) {
+            int quotient = reader.readUnary();
+            int remainder = reader.readBits(riceParameter);
+            // values are 4-byte unsigned integers, so overflow wraps around just like unsigned arithmetic
+            values[i] = values[i - 1] + ((quotient << riceParameter) | remainder);
+        }
+        return values;
+    }
 
-        for (int i = 0; i < data.length; i++) {
-            BitSet bitsOfByte = BitSet.valueOf(makeArrayOfByte(data[i]));
-            for (int j = 0; j < bitsOfByte.size(); j++) {
-                bits.set(i * BYTE_BITS_SIZE + j, bitsOfByte.get(j));
-            }
+    /**
+     * Reads bits starting from the least significant bit of each byte. Bits are buffered in a long so that runs of
+     * ones are counted a word at a time rather than bit by bit.
+     */
+    private static class BitReader {
+
+        private final byte[] data;
+        private int offset;
+        private long bits;
+        private int count;
+
+        BitReader(byte[] data) {
+            this.data = data;
         }
 
-        List<Integer> result = new LinkedList<>();
-        for (int n = 0; n < bits.size();) {
+        int readUnary() {
             int quotient = 0;
-            while (bits.get(n++)) {
-                quotient++;
-            }
-
-            int remainder = 0;
-            BitSet range = bits.get(n, n + riceParameter);
-            for (int i = 0; i < range.size(); i++) {
-                if (range.get(i)) {
-                    remainder += (1 << range.size() - i - 1);
+            while (true) {
+                refill();
+                if (count == 0) {
+                    throw new IllegalArgumentException("Rice coded data is truncated");
+                }
+                int ones = Long.numberOfTrailingZeros(~bits);
+                if (ones < count) {
+                    skip(ones + 1);
+                    return quotient + ones;
                 }
+                quotient += count;
+                skip(count);
             }
-            n += riceParameter;
+        }
 
-            int value = (quotient << riceParameter) + remainder;
-            result.add(value);
+        int readBits(int n) {
+            refill();
+            if (count < n) {
+                throw new IllegalArgumentException("Rice coded data is truncated");
+            }
+            int value = (int) (bits & ((1L << n) - 1));
+            skip(n);
+            return value;
         }
 
-        // remove last elements that are zero
-        for (int i = result.size() - 1; i >= 0; --i) {
-            if (result.get(i) == 0) {
-                result.remove(i);
+        private void refill() {
+            while (count <= Long.SIZE - Byte.SIZE && offset < data.length) {
+                bits |= (data[offset++] & 0xffL) << count;
+                count += Byte.SIZE;
             }
         }
-        return result;
-    }
 
-    private byte[] makeArrayOfByte(byte byteVal) {
-        return new byte[] {
-            byteVal
-        };
+        private void skip(int n) {
+            bits = n == Long.SIZE ? 0 : bits >>> n;
+            count -= n;
+        }
     }
 
 }
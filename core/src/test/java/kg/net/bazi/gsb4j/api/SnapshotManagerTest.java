@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import kg.net.bazi.gsb4j.cache.ThreatListDescriptorsCache;
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class SnapshotManagerTest {
+
+    private Path directory;
+    private Path snapshot;
+    private ThreatListDescriptor descriptor;
+    private ThreatListDescriptor unverified;
+    private List<byte[]> hashes;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+        snapshot = directory.resolve("lists.snapshot");
+
+        descriptor = makeDescriptor(ThreatType.MALWARE);
+        unverified = makeDescriptor(ThreatType.SOCIAL_ENGINEERING);
+        hashes = Arrays.asList(new byte[]{1, 2, 3, 4}, new byte[]{5, 6, 7, 8}, new byte[]{9, 9, 9, 9, 9, 9});
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> ls = new ArrayList<>();
+            files.forEach(ls::add);
+            Collections.reverse(ls);
+            for (Path file : ls) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testExportAndImport() throws IOException {
+        SnapshotManager source = makeManager(directory.resolve("source"));
+        source.localDatabase.replace(descriptor, hashes);
+        source.stateHolder.setState(descriptor, "state-1");
+        source.stateHolder.setChecksum(descriptor, ListDigest.of(new ArrayList<>(hashes)).checksum());
+        // checksum of this list does not match its prefixes
+        source.localDatabase.replace(unverified, hashes);
+        source.stateHolder.setState(unverified, "state-2");
+        source.stateHolder.setChecksum(unverified, "bogus");
+
+        Assert.assertEquals(1, source.exportSnapshot(snapshot));
+
+        SnapshotManager target = makeManager(directory.resolve("target"));
+        Assert.assertEquals(1, target.importSnapshot(snapshot));
+        Assert.assertEquals("state-1", target.stateHolder.getState(descriptor));
+        Assert.assertEquals(source.stateHolder.getChecksum(descriptor), target.stateHolder.getChecksum(descriptor));
+        Assert.assertEquals(Integer.valueOf(1), target.stateHolder.getPrefixLengths(descriptor).get(6));
+        Assert.assertEquals("", target.stateHolder.getState(unverified));
+        for (byte[] hash : hashes) {
+            Assert.assertTrue(target.localDatabase.contains(hash, descriptor));
+        }
+        Assert.assertEquals(2, target.descriptorsCache.get().size());
+    }
+
+    @Test
+    public void testListWithStateIsNotImported() throws IOException {
+        SnapshotManager source = makeManager(directory.resolve("source"));
+        source.localDatabase.replace(descriptor, hashes);
+        source.stateHolder.setState(descriptor, "state-1");
+        source.stateHolder.setChecksum(descriptor, ListDigest.of(new ArrayList<>(hashes)).checksum());
+        source.exportSnapshot(snapshot);
+
+        SnapshotManager target = makeManager(directory.resolve("target"));
+        target.stateHolder.setState(descriptor, "state-3");
+        Assert.assertEquals(0, target.importSnapshot(snapshot));
+        Assert.assertEquals("state-3", target.stateHolder.getState(descriptor));
+        Assert.assertFalse(target.localDatabase.contains(hashes.get(0), descriptor));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedSnapshot() throws IOException {
+        SnapshotManager source = makeManager(directory.resolve("source"));
+        source.localDatabase.replace(descriptor, hashes);
+        source.stateHolder.setState(descriptor, "state-1");
+        source.stateHolder.setChecksum(descriptor, ListDigest.of(new ArrayList<>(hashes)).checksum());
+        source.exportSnapshot(snapshot);
+
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 8] ^= 1;
+        Files.write(snapshot, bytes);
+
+        makeManager(directory.resolve("target")).importSnapshot(snapshot);
+    }
+
+    @Test
+    public void testNothingImportedWhenListChecksumFails() throws IOException {
+        SnapshotManager source = makeManager(directory.resolve("source"));
+        for (ThreatListDescriptor d : Arrays.asList(descriptor, unverified)) {
+            source.localDatabase.replace(d, hashes);
+            source.stateHolder.setState(d, "state-1");
+            source.stateHolder.setChecksum(d, ListDigest.of(new ArrayList<>(hashes)).checksum());
+        }
+        Assert.assertEquals(2, source.exportSnapshot(snapshot));
+
+        // last prefix of the last list is changed and file checksum is made valid again
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - Integer.BYTES - 1] ^= 1;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        ByteBuffer.wrap(bytes).putInt(bytes.length - Integer.BYTES, (int) crc.getValue());
+        Files.write(snapshot, bytes);
+
+        SnapshotManager target = makeManager(directory.resolve("target"));
+        try {
+            target.importSnapshot(snapshot);
+            Assert.fail("Snapshot with a corrupted list must not be imported");
+        } catch (IOException ex) {
+            Assert.assertEquals("", target.stateHolder.getState(descriptor));
+            Assert.assertEquals("", target.stateHolder.getState(unverified));
+            Assert.assertFalse(target.localDatabase.contains(hashes.get(0), descriptor));
+            Assert.assertFalse(target.localDatabase.contains(hashes.get(0), unverified));
+        }
+    }
+
+    private SnapshotManager makeManager(Path dataDirectory) throws IOException {
+        Files.createDirectories(dataDirectory);
+        Gsb4jProperties properties = (Gsb4jProperties) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Gsb4jProperties.class},
+            (proxy, method, args) -> method.getName().equals("getDataDirectory") ? dataDirectory : null);
+        SnapshotManager manager = new SnapshotManager(new ReentrantLock());
+        manager.localDatabase = new UpdateJournalTest.ListLocalDatabase();
+        manager.stateHolder = new StateHolder(properties);
+        manager.journal = new UpdateJournal(properties);
+        manager.journal.localDatabase = manager.localDatabase;
+        manager.journal.stateHolder = manager.stateHolder;
+        manager.descriptorsCache = new ThreatListDescriptorsCache();
+        manager.descriptorsCache.seed(Arrays.asList(descriptor, unverified));
+        return manager;
+    }
+
+    private static ThreatListDescriptor makeDescriptor(ThreatType threatType) {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(threatType);
+        descriptor.setPlatformType(PlatformType.ANY_PLATFORM);
+        descriptor.setThreatEntryType(ThreatEntryType.URL);
+        return descriptor;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class StateHolderTest {
+
+    private Path directory;
+    private Gsb4jProperties properties;
+    private ThreatListDescriptor descriptor;
+
+    // states file is located through data directory every time it is written
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("state-holder");
+        properties = (Gsb4jProperties) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Gsb4jProperties.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getDataDirectory")) {
+                    writes.incrementAndGet();
+                    return directory;
+                }
+                return null;
+            });
+
+        descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(ThreatType.MALWARE);
+        descriptor.setPlatformType(PlatformType.ANY_PLATFORM);
+        descriptor.setThreatEntryType(ThreatEntryType.URL);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testSetListVersion() {
+        StateHolder stateHolder = new StateHolder(properties);
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        histogram.put(4, 10);
+        histogram.put(32, 1);
+
+        writes.set(0);
+        stateHolder.setListVersion(descriptor, histogram, "checksum-1", "state-1");
+        Assert.assertEquals(1, writes.get());
+
+        StateHolder reloaded = new StateHolder(properties);
+        Assert.assertEquals(histogram, reloaded.getPrefixLengths(descriptor));
+        Assert.assertEquals("checksum-1", reloaded.getChecksum(descriptor));
+        Assert.assertEquals("state-1", reloaded.getState(descriptor));
+
+        reloaded.setListVersion(descriptor, null, null, null);
+        Assert.assertNull(reloaded.getPrefixLengths(descriptor));
+        Assert.assertNull(reloaded.getChecksum(descriptor));
+        Assert.assertEquals("", reloaded.getState(descriptor));
+    }
+
+    @Test
+    public void testUnchangedDatabaseEntriesLimitIsNotWritten() {
+        StateHolder stateHolder = new StateHolder(properties);
+        stateHolder.setDatabaseEntriesLimit(descriptor, 4096);
+        Assert.assertEquals(4096, stateHolder.getDatabaseEntriesLimit(descriptor));
+
+        writes.set(0);
+        stateHolder.setDatabaseEntriesLimit(descriptor, 4096);
+        Assert.assertEquals(0, writes.get());
+        stateHolder.setDatabaseEntriesLimit(descriptor, 0);
+        Assert.assertEquals(1, writes.get());
+        Assert.assertEquals(0, new StateHolder(properties).getDatabaseEntriesLimit(descriptor));
+    }
+
+}
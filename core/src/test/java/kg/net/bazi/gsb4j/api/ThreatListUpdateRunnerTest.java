@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class ThreatListUpdateRunnerTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void testNextDelayHonorsMinimumWaitDuration() {
+        Assert.assertEquals(1234, ThreatListUpdateRunner.nextDelay(1234, 10 * MINUTE, 5000));
+    }
+
+    @Test
+    public void testNextDelayFallsBackToInterval() {
+        Assert.assertEquals(10 * MINUTE + 5000, ThreatListUpdateRunner.nextDelay(0, 10 * MINUTE, 5000));
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        Assert.assertEquals(15 * MINUTE, ThreatListUpdateRunner.backoffDelay(1, 0));
+        Assert.assertEquals(30 * MINUTE, ThreatListUpdateRunner.backoffDelay(1, 0.999999999));
+        Assert.assertEquals(30 * MINUTE, ThreatListUpdateRunner.backoffDelay(2, 0));
+        Assert.assertEquals(90 * MINUTE, ThreatListUpdateRunner.backoffDelay(3, 0.5));
+        Assert.assertEquals(24 * 60 * MINUTE, ThreatListUpdateRunner.backoffDelay(8, 0));
+        Assert.assertEquals(24 * 60 * MINUTE, ThreatListUpdateRunner.backoffDelay(Integer.MAX_VALUE, 0.5));
+    }
+
+    @Test
+    public void testNextUpdateIsScheduledAfterError() throws IOException {
+        List<Long> delays = new ArrayList<>();
+        ScheduledExecutorService scheduler = (ScheduledExecutorService) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{ScheduledExecutorService.class}, (proxy, method, args) -> {
+                if (method.getName().equals("schedule")) {
+                    delays.add((Long) args[1]);
+                }
+                return null;
+            });
+        Path directory = Files.createTempDirectory("update-runner");
+        Gsb4jProperties properties = (Gsb4jProperties) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Gsb4jProperties.class},
+            (proxy, method, args) -> method.getName().equals("getDataDirectory") ? directory : 600L);
+        try {
+            ThreatListUpdateRunner runner = new ThreatListUpdateRunner(scheduler, new StateHolder(properties),
+                properties);
+            Assert.assertTrue("Nothing is scheduled before injection completes", delays.isEmpty());
+            runner.updateProvider = () -> {
+                throw new OutOfMemoryError("cold full update");
+            };
+            try {
+                runner.run();
+                Assert.fail("Error must not be swallowed");
+            } catch (OutOfMemoryError ex) {
+                // expected
+            }
+            Assert.assertEquals(1, delays.size());
+            Assert.assertTrue(delays.get(0) >= 15 * MINUTE);
+        } finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class UpdateConstraintsTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    @Test
+    public void testToLimit() {
+        Assert.assertEquals(0, UpdateConstraints.toLimit(0));
+        Assert.assertEquals(0, UpdateConstraints.toLimit(-5));
+        Assert.assertEquals(1024, UpdateConstraints.toLimit(1));
+        Assert.assertEquals(1024, UpdateConstraints.toLimit(2047));
+        Assert.assertEquals(65536, UpdateConstraints.toLimit(100000));
+        Assert.assertEquals(1 << 20, UpdateConstraints.toLimit(1L << 40));
+    }
+
+    @Test
+    public void testNoLimitWithinBudget() {
+        Assert.assertEquals(0, UpdateConstraints.nextLimit(0, 100000, 10 * MIB, 16 * MIB, 4));
+    }
+
+    @Test
+    public void testColdStartLimitedToEqualShare() {
+        // 32 MiB budget shared by 4 lists at 32 bytes per entry
+        Assert.assertEquals(1 << 18, UpdateConstraints.nextLimit(0, 0, 0, 32 * MIB, 4));
+    }
+
+    @Test
+    public void testTightenedWhenOverBudget() {
+        // list takes half of the footprint which is twice the budget: it gets a quarter of the budget
+        long entries = 200000;
+        long footprint = 2 * entries * UpdateConstraints.BYTES_PER_ENTRY;
+        long budget = footprint / 2;
+        Assert.assertEquals(65536, UpdateConstraints.nextLimit(0, entries, footprint, budget, 4));
+        // limit never grows while over budget
+        Assert.assertEquals(32768, UpdateConstraints.nextLimit(32768, entries, footprint, budget, 4));
+    }
+
+    @Test
+    public void testRelaxedWellBelowBudget() {
+        Assert.assertEquals(8192, UpdateConstraints.nextLimit(4096, 4096, MIB, 16 * MIB, 4));
+        Assert.assertEquals(0, UpdateConstraints.nextLimit(1 << 20, 4096, MIB, 16 * MIB, 4));
+        // kept as is close to the budget
+        Assert.assertEquals(4096, UpdateConstraints.nextLimit(4096, 4096, 10 * MIB, 16 * MIB, 4));
+    }
+
+}
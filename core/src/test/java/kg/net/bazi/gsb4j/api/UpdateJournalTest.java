@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.db.LocalDatabase;
+import kg.net.bazi.gsb4j.properties.Gsb4jProperties;
+import kg.net.bazi.gsb4j.util.HashPrefixes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class UpdateJournalTest {
+
+    private Path directory;
+    private ListLocalDatabase localDatabase;
+    private StateHolder stateHolder;
+    private ThreatListDescriptor descriptor;
+    private List<byte[]> oldVersion;
+    private List<byte[]> newVersion;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("update-journal");
+        Gsb4jProperties properties = (Gsb4jProperties) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Gsb4jProperties.class},
+            (proxy, method, args) -> method.getName().equals("getDataDirectory") ? directory : null);
+        stateHolder = new StateHolder(properties);
+        localDatabase = new ListLocalDatabase();
+
+        descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(ThreatType.SOCIAL_ENGINEERING);
+        descriptor.setPlatformType(PlatformType.ANY_PLATFORM);
+        descriptor.setThreatEntryType(ThreatEntryType.URL);
+
+        oldVersion = Arrays.asList(new byte[]{1, 2, 3, 4}, new byte[]{5, 6, 7, 8});
+        newVersion = Arrays.asList(new byte[]{1, 2, 3, 4}, new byte[]{9, 9, 9, 9, 9});
+
+        localDatabase.replace(descriptor, oldVersion);
+        stateHolder.setState(descriptor, "state-1");
+        stateHolder.setChecksum(descriptor, checksum(oldVersion));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRollForward() throws IOException {
+        beginUpdate();
+        localDatabase.replace(descriptor, newVersion);
+
+        recover();
+        Assert.assertEquals("state-2", stateHolder.getState(descriptor));
+        Assert.assertEquals(checksum(newVersion), stateHolder.getChecksum(descriptor));
+        Assert.assertEquals(Integer.valueOf(1), stateHolder.getPrefixLengths(descriptor).get(5));
+    }
+
+    @Test
+    public void testRollBack() throws IOException {
+        beginUpdate();
+
+        recover();
+        Assert.assertEquals("state-1", stateHolder.getState(descriptor));
+        Assert.assertEquals(checksum(oldVersion), stateHolder.getChecksum(descriptor));
+        Assert.assertEquals(Integer.valueOf(2), stateHolder.getPrefixLengths(descriptor).get(4));
+    }
+
+    @Test
+    public void testUnknownVersionIsDownloadedAnew() throws IOException {
+        beginUpdate();
+        localDatabase.replace(descriptor, Arrays.asList(new byte[]{1, 1, 1, 1}));
+
+        recover();
+        Assert.assertEquals("", stateHolder.getState(descriptor));
+        Assert.assertNull(stateHolder.getChecksum(descriptor));
+    }
+
+    @Test
+    public void testCommittedUpdateIsNotRecovered() throws IOException {
+        UpdateJournal journal = beginUpdate();
+        localDatabase.replace(descriptor, newVersion);
+        stateHolder.setState(descriptor, "state-2");
+        journal.commit(descriptor);
+        Assert.assertFalse(Files.exists(directory.resolve(UpdateJournal.FILE_NAME)));
+
+        // local database is changed behind journal's back; committed version is trusted as is
+        localDatabase.replace(descriptor, oldVersion);
+        recover();
+        Assert.assertEquals("state-2", stateHolder.getState(descriptor));
+    }
+
+    @Test
+    public void testIncompleteRecordIsSkipped() throws IOException {
+        beginUpdate();
+        Path file = directory.resolve(UpdateJournal.FILE_NAME);
+        Files.write(file, "BEGIN\tMALWARE\tWIN".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        localDatabase.replace(descriptor, newVersion);
+
+        recover();
+        Assert.assertEquals("state-2", stateHolder.getState(descriptor));
+        Assert.assertFalse(Files.exists(file));
+    }
+
+    private UpdateJournal beginUpdate() throws IOException {
+        UpdateJournal journal = makeJournal();
+        ListDigest digest = ListDigest.of(new ArrayList<>(newVersion));
+        journal.begin(descriptor, stateHolder.getChecksum(descriptor), digest, "state-2");
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        // a new instance is what a restarted process would see
+        makeJournal().recover();
+    }
+
+    private UpdateJournal makeJournal() {
+        UpdateJournal journal = new UpdateJournal(directory.resolve(UpdateJournal.FILE_NAME));
+        journal.localDatabase = localDatabase;
+        journal.stateHolder = stateHolder;
+        return journal;
+    }
+
+    private static String checksum(List<byte[]> hashes) {
+        return ListDigest.of(new ArrayList<>(hashes)).checksum();
+    }
+
+    /**
+     * Local database that keeps sorted lists of hash prefixes in memory.
+     */
+    static class ListLocalDatabase implements LocalDatabase {
+
+        private final Map<ThreatListDescriptor, List<byte[]>> lists = new HashMap<>();
+
+        @Override
+        public List<byte[]> load(ThreatListDescriptor descriptor) {
+            return new ArrayList<>(lists.getOrDefault(descriptor, new ArrayList<>()));
+        }
+
+        @Override
+        public void persist(ThreatListDescriptor descriptor, List<byte[]> hashes) {
+            List<byte[]> list = lists.computeIfAbsent(descriptor, d -> new ArrayList<>());
+            list.addAll(hashes);
+            list.sort(HashPrefixes.LEXICOGRAPHIC_ORDER);
+        }
+
+        @Override
+        public boolean contains(byte[] hash, ThreatListDescriptor descriptor) {
+            return lists.getOrDefault(descriptor, new ArrayList<>()).stream().anyMatch(h -> Arrays.equals(h, hash));
+        }
+
+        @Override
+        public void clear(ThreatListDescriptor descriptor) {
+            lists.remove(descriptor);
+        }
+    }
+
+}
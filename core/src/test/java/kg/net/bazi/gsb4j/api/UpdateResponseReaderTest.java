@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.api;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import kg.net.bazi.gsb4j.data.updates.ListUpdateResponse;
+import kg.net.bazi.gsb4j.util.RiceCompression;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class UpdateResponseReaderTest {
+
+    private static final String FULL_UPDATE = "{"
+        + "\"threatType\": \"MALWARE\", \"threatEntryType\": \"URL\", \"platformType\": \"WINDOWS\","
+        + "\"responseType\": \"FULL_UPDATE\","
+        + "\"additions\": ["
+        + "  {\"compressionType\": \"RAW\", \"rawHashes\": {\"prefixSize\": 4, \"rawHashes\": \"AAAAAQAAAAI=\"}},"
+        + "  {\"compressionType\": \"RICE\", \"riceHashes\": {\"firstValue\": \"10\", \"riceParameter\": 2,"
+        + "    \"numEntries\": 2, \"encodedData\": \"RQ==\"}}"
+        + "],"
+        + "\"newClientState\": \"state-1\","
+        + "\"checksum\": {\"sha256\": \"checksum-1\"}"
+        + "}";
+
+    private static final String PARTIAL_UPDATE = "{"
+        + "\"threatType\": \"SOCIAL_ENGINEERING\", \"threatEntryType\": \"URL\", \"platformType\": \"ANY_PLATFORM\","
+        + "\"responseType\": \"PARTIAL_UPDATE\","
+        + "\"removals\": ["
+        + "  {\"compressionType\": \"RAW\", \"rawIndices\": {\"indices\": [7, 3]}},"
+        + "  {\"compressionType\": \"RICE\", \"riceIndices\": {\"firstValue\": \"3\", \"riceParameter\": 2,"
+        + "    \"numEntries\": 2, \"encodedData\": \"RQ==\"}}"
+        + "],"
+        + "\"unknownField\": {\"nested\": [1, 2, 3]},"
+        + "\"newClientState\": \"state-2\""
+        + "}";
+
+    private UpdateResponseReader reader;
+
+    @Before
+    public void setUp() {
+        reader = new UpdateResponseReader();
+        reader.gson = new Gson();
+        reader.riceCompression = new RiceCompression();
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        String json = "{\"listUpdateResponses\": [" + FULL_UPDATE + ", " + PARTIAL_UPDATE + "],"
+            + "\"minimumWaitDuration\": \"593.440s\"}";
+        List<ListUpdate> updates = new ArrayList<>();
+        String minimumWaitDuration = reader.read(new StringReader(json), updates::add);
+
+        Assert.assertEquals("593.440s", minimumWaitDuration);
+        Assert.assertEquals(2, updates.size());
+
+        ListUpdate full = updates.get(0);
+        Assert.assertEquals(descriptor(ThreatType.MALWARE, PlatformType.WINDOWS), full.getDescriptor());
+        Assert.assertEquals(ListUpdateResponse.ResponseType.FULL_UPDATE, full.getResponseType());
+        Assert.assertEquals(5, full.getAdditions().size());
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 1}, full.getAdditions().get(0));
+        Assert.assertArrayEquals(new byte[]{0, 0, 0, 2}, full.getAdditions().get(1));
+        // Rice coded prefixes are little-endian
+        Assert.assertArrayEquals(new byte[]{10, 0, 0, 0}, full.getAdditions().get(2));
+        Assert.assertArrayEquals(new byte[]{17, 0, 0, 0}, full.getAdditions().get(4));
+        Assert.assertEquals(0, full.getRemovalIndices().length);
+        Assert.assertEquals("state-1", full.getNewClientState());
+        Assert.assertEquals("checksum-1", full.getChecksum().getSha256());
+
+        ListUpdate partial = updates.get(1);
+        Assert.assertEquals(descriptor(ThreatType.SOCIAL_ENGINEERING, PlatformType.ANY_PLATFORM),
+            partial.getDescriptor());
+        Assert.assertEquals(ListUpdateResponse.ResponseType.PARTIAL_UPDATE, partial.getResponseType());
+        Assert.assertTrue(partial.getAdditions().isEmpty());
+        Assert.assertArrayEquals(new int[]{3, 7, 8, 10}, partial.getRemovalIndices());
+        Assert.assertFalse(partial.isEmpty());
+        Assert.assertEquals("state-2", partial.getNewClientState());
+        Assert.assertNull(partial.getChecksum());
+    }
+
+    @Test
+    public void testReadWithoutUpdates() throws IOException {
+        List<ListUpdate> updates = new ArrayList<>();
+        Assert.assertNull(reader.read(new StringReader("{}"), updates::add));
+        Assert.assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    public void testListUpdateIsPassedOnBeforeResponseEnds() {
+        // response is cut in the middle of the second list update
+        String json = "{\"listUpdateResponses\": [" + FULL_UPDATE + ", " + PARTIAL_UPDATE.substring(0, 100);
+        List<ListUpdate> updates = new ArrayList<>();
+        try {
+            reader.read(new StringReader(json), updates::add);
+            Assert.fail("Truncated response must fail");
+        } catch (IOException ex) {
+            Assert.assertEquals(1, updates.size());
+            Assert.assertEquals("state-1", updates.get(0).getNewClientState());
+        }
+    }
+
+    @Test
+    public void testCorruptedRiceDataMarksUpdate() throws IOException {
+        // encoded data is too short for the number of entries
+        String json = "{\"listUpdateResponses\": [" + FULL_UPDATE.replace("\"numEntries\": 2", "\"numEntries\": 50")
+            + ", " + PARTIAL_UPDATE + "]}";
+        List<ListUpdate> updates = new ArrayList<>();
+        reader.read(new StringReader(json), updates::add);
+
+        Assert.assertEquals(2, updates.size());
+        Assert.assertNotNull(updates.get(0).getError());
+        Assert.assertNull(updates.get(1).getError());
+    }
+
+    private static ThreatListDescriptor descriptor(ThreatType threatType, PlatformType platformType) {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(threatType);
+        descriptor.setPlatformType(platformType);
+        descriptor.setThreatEntryType(ThreatEntryType.URL);
+        return descriptor;
+    }
+
+}
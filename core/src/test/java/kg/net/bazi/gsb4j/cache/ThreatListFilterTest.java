@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.cache;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class ThreatListFilterTest {
+
+    @Test
+    public void testAllIncludedByDefault() {
+        ThreatListFilter filter = ThreatListFilter.parse(null, " ");
+        Assert.assertTrue(filter.test(descriptor(ThreatType.MALWARE, PlatformType.WINDOWS)));
+        Assert.assertTrue(filter.test(descriptor(ThreatType.UNWANTED_SOFTWARE, PlatformType.ANY_PLATFORM)));
+    }
+
+    @Test
+    public void testInclude() {
+        ThreatListFilter filter = ThreatListFilter.parse("MALWARE/ANY_PLATFORM, SOCIAL_ENGINEERING", null);
+        Assert.assertTrue(filter.test(descriptor(ThreatType.MALWARE, PlatformType.ANY_PLATFORM)));
+        Assert.assertFalse(filter.test(descriptor(ThreatType.MALWARE, PlatformType.WINDOWS)));
+        Assert.assertTrue(filter.test(descriptor(ThreatType.SOCIAL_ENGINEERING, PlatformType.WINDOWS)));
+        Assert.assertFalse(filter.test(descriptor(ThreatType.UNWANTED_SOFTWARE, PlatformType.ANY_PLATFORM)));
+    }
+
+    @Test
+    public void testExclude() {
+        ThreatListFilter filter = ThreatListFilter.parse("*/ANY_PLATFORM", "UNWANTED_SOFTWARE/*");
+        Assert.assertTrue(filter.test(descriptor(ThreatType.MALWARE, PlatformType.ANY_PLATFORM)));
+        Assert.assertFalse(filter.test(descriptor(ThreatType.MALWARE, PlatformType.LINUX)));
+        Assert.assertFalse(filter.test(descriptor(ThreatType.UNWANTED_SOFTWARE, PlatformType.ANY_PLATFORM)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownThreatType() {
+        ThreatListFilter.parse("MALWARE,NO_SUCH_THREAT", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern() {
+        ThreatListFilter.parse("MALWARE/ANY_PLATFORM/URL", null);
+    }
+
+    private static ThreatListDescriptor descriptor(ThreatType threatType, PlatformType platformType) {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(threatType);
+        descriptor.setPlatformType(platformType);
+        descriptor.setThreatEntryType(ThreatEntryType.URL);
+        return descriptor;
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import kg.net.bazi.gsb4j.data.PlatformType;
+import kg.net.bazi.gsb4j.data.ThreatEntryType;
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import kg.net.bazi.gsb4j.data.ThreatType;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Conformance and performance tests that every {@link LocalDatabase} implementation shall pass. Tests of a backend
+ * extend this class and supply an instance of the backend.
+ *
+ * @author azilet
+ */
+public abstract class AbstractLocalDatabaseTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractLocalDatabaseTest.class);
+
+    protected final int itemsCount = 12345;
+
+    protected LocalDatabase db;
+    protected ThreatListDescriptor descriptor;
+    protected ThreatListDescriptor other;
+
+    /**
+     * Creates an empty local database to test.
+     *
+     * @return local database
+     * @throws IOException when I/O errors occur
+     */
+    protected abstract LocalDatabase createDatabase() throws IOException;
+
+    @Before
+    public void setUpDatabase() throws IOException {
+        descriptor = makeDescriptor(PlatformType.WINDOWS);
+        other = makeDescriptor(PlatformType.LINUX);
+
+        List<byte[]> ls = new ArrayList<>();
+        for (int i = 1; i <= itemsCount; i++) {
+            ls.add(prefix(i * 7919));
+        }
+
+        db = createDatabase();
+        db.replace(descriptor, ls);
+    }
+
+    @After
+    public void tearDownDatabase() throws IOException {
+        db.clear(descriptor);
+        db.clear(other);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        List<String> ls = hex(db.load(descriptor));
+        Assert.assertEquals(itemsCount, ls.size());
+        Assert.assertEquals(String.format("%08x", 7919), ls.get(0));
+        Assert.assertEquals(String.format("%08x", itemsCount * 7919), ls.get(itemsCount - 1));
+    }
+
+    @Test
+    public void testLoadIsSorted() throws Exception {
+        db.replace(descriptor, Arrays.asList(hash("ffffffff"), hash("0102030405"), hash("01020304"),
+            hash("00ffffff"), hash("80000000")));
+
+        List<String> ls = hex(db.load(descriptor));
+        Assert.assertEquals(Arrays.asList("00ffffff", "01020304", "0102030405", "80000000", "ffffffff"), ls);
+    }
+
+    @Test
+    public void testLoadEmpty() throws Exception {
+        Assert.assertTrue(db.load(other).isEmpty());
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        db.replace(descriptor, Arrays.asList(hash("ffffffff"), hash("0102030405"), hash("01020304"),
+            hash("00ffffff"), hash("0102030500"), hash("80000000")));
+
+        Assert.assertEquals(Arrays.asList("00ffffff", "01020304", "0102030405", "0102030500", "80000000", "ffffffff"),
+            hex(readCursor(descriptor)));
+        Assert.assertEquals(hex(db.load(descriptor)), hex(readCursor(descriptor)));
+    }
+
+    @Test
+    public void testCursorEmpty() throws Exception {
+        Assert.assertTrue(readCursor(other).isEmpty());
+    }
+
+    @Test
+    public void testPersist() throws Exception {
+        db.persist(descriptor, Arrays.asList(hash("ffffffff"), hash("0102030405")));
+
+        Assert.assertTrue(db.contains(hash("ffffffff"), descriptor));
+        Assert.assertTrue(db.contains(hash("0102030405"), descriptor));
+        Assert.assertTrue(db.contains(prefix(7919), descriptor));
+        Assert.assertFalse(db.contains(hash("01020304"), descriptor));
+        Assert.assertEquals(itemsCount + 2, db.load(descriptor).size());
+    }
+
+    @Test
+    public void testPersistDuplicates() throws Exception {
+        db.persist(descriptor, Arrays.asList(prefix(7919), prefix(7919)));
+
+        Assert.assertEquals(itemsCount, db.load(descriptor).size());
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        Assert.assertTrue(db.contains(prefix(7919), descriptor));
+        Assert.assertTrue(db.contains(prefix(2 * 7919), descriptor));
+        Assert.assertTrue(db.contains(prefix(itemsCount * 7919), descriptor));
+
+        Assert.assertFalse(db.contains(hash("00000000"), descriptor));
+        Assert.assertFalse(db.contains(prefix(7919 + 1), descriptor));
+        Assert.assertFalse(db.contains(prefix((itemsCount + 1) * 7919), descriptor));
+        Assert.assertFalse(db.contains(prefix(7919), other));
+    }
+
+    @Test
+    public void testContainsUnsignedOrder() throws Exception {
+        db.persist(descriptor, Arrays.asList(hash("ffffffff"), hash("80000000"), hash("7fffffff")));
+
+        Assert.assertTrue(db.contains(hash("ffffffff"), descriptor));
+        Assert.assertTrue(db.contains(hash("80000000"), descriptor));
+        Assert.assertTrue(db.contains(hash("7fffffff"), descriptor));
+        Assert.assertFalse(db.contains(hash("fffffffe"), descriptor));
+    }
+
+    @Test
+    public void testContainsLongPrefixes() throws Exception {
+        db.persist(descriptor, Arrays.asList(hash("0102030405"), hash("a1b2c3d4e5f6"), hash("0102030405060708")));
+
+        Assert.assertTrue(db.contains(hash("0102030405"), descriptor));
+        Assert.assertTrue(db.contains(hash("a1b2c3d4e5f6"), descriptor));
+        Assert.assertTrue(db.contains(hash("0102030405060708"), descriptor));
+
+        Assert.assertFalse(db.contains(hash("01020304"), descriptor));
+        Assert.assertFalse(db.contains(hash("010203040506"), descriptor));
+        Assert.assertFalse(db.contains(hash("a1b2c3d4e5"), descriptor));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        db.clear(descriptor);
+
+        Assert.assertFalse(db.contains(prefix(7919), descriptor));
+        Assert.assertTrue(db.load(descriptor).isEmpty());
+    }
+
+    @Test
+    public void testFindMatches() throws Exception {
+        db.persist(descriptor, Arrays.asList(hash("0102030405"), hash("ffffffff")));
+        db.replace(other, Arrays.asList(prefix(2 * 7919), hash("0abc0000")));
+
+        List<byte[]> hashes = Arrays.asList(hash("ffffffff"), prefix(7919), prefix(7920), hash("0102030405"),
+            hash("01020304"), hash("0102030406"), prefix(3 * 7919), prefix(2 * 7919), hash("0abc0000"));
+        Map<ThreatListDescriptor, List<byte[]>> matches = db.findMatches(hashes, Arrays.asList(descriptor, other));
+
+        Assert.assertEquals(2, matches.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("ffffffff", String.format("%08x", 7919),
+            String.format("%08x", 2 * 7919), String.format("%08x", 3 * 7919), "0102030405")),
+            new HashSet<>(hex(matches.get(descriptor))));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(String.format("%08x", 2 * 7919), "0abc0000")),
+            new HashSet<>(hex(matches.get(other))));
+
+        // hashes of the result shall be the same instances as supplied ones
+        for (byte[] match : matches.get(descriptor)) {
+            Assert.assertTrue(hashes.stream().anyMatch(h -> h == match));
+        }
+    }
+
+    @Test
+    public void testFindMatchesManyHashes() throws Exception {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            hashes.add(prefix(0xff000000 + i));
+        }
+        hashes.add(prefix(7919));
+        hashes.add(prefix(2 * 7919));
+
+        Map<ThreatListDescriptor, List<byte[]>> matches = db.findMatches(hashes, Arrays.asList(descriptor, other));
+
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(String.format("%08x", 7919), String.format("%08x", 2 * 7919))),
+            new HashSet<>(hex(matches.get(descriptor))));
+    }
+
+    @Test
+    public void testFindMatchesNothing() throws Exception {
+        Assert.assertTrue(db.findMatches(Collections.emptyList(), Arrays.asList(descriptor, other)).isEmpty());
+        Assert.assertTrue(db.findMatches(Arrays.asList(prefix(7920)), Arrays.asList(descriptor, other)).isEmpty());
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        db.persist(descriptor, Arrays.asList(hash("0102030405")));
+        db.update(descriptor, Arrays.asList(prefix(7919), hash("0102030405")),
+            Arrays.asList(hash("ffffffff"), hash("0abc000001")));
+
+        Assert.assertFalse(db.contains(prefix(7919), descriptor));
+        Assert.assertFalse(db.contains(hash("0102030405"), descriptor));
+        Assert.assertTrue(db.contains(prefix(2 * 7919), descriptor));
+        Assert.assertTrue(db.contains(hash("ffffffff"), descriptor));
+        Assert.assertTrue(db.contains(hash("0abc000001"), descriptor));
+        Assert.assertEquals(itemsCount + 1, db.load(descriptor).size());
+    }
+
+    @Test
+    public void testUpdateMerge() throws Exception {
+        db.replace(descriptor, Arrays.asList(prefix(1), prefix(3), prefix(5), hash("0000000201"),
+            hash("0000000401"), hash("000000040102")));
+        // removed and added again, added while already present, removed while not present
+        db.update(descriptor, Arrays.asList(prefix(3), prefix(4), hash("0000000401"), hash("000000040102")),
+            Arrays.asList(prefix(3), prefix(5), prefix(0), prefix(7), hash("0000000001"), hash("0000000201"),
+                hash("ffffffff0102")));
+
+        Assert.assertEquals(Arrays.asList("00000000", "0000000001", "00000001", "0000000201", "00000003", "00000005",
+            "00000007", "ffffffff0102"), hex(db.load(descriptor)));
+        Assert.assertEquals(hex(db.load(descriptor)), hex(readCursor(descriptor)));
+        Assert.assertTrue(db.contains(prefix(3), descriptor));
+        Assert.assertFalse(db.contains(hash("0000000401"), descriptor));
+        Assert.assertFalse(db.contains(hash("000000040102"), descriptor));
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        db.replace(descriptor, Arrays.asList(hash("0abc0000"), prefix(2), hash("0abc000001")));
+
+        Assert.assertEquals(Arrays.asList("00000002", "0abc0000", "0abc000001"), hex(db.load(descriptor)));
+        Assert.assertFalse(db.contains(prefix(7919), descriptor));
+        Assert.assertTrue(db.contains(hash("0abc000001"), descriptor));
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        Random random = new Random(7919);
+        List<byte[]> ls = new ArrayList<>();
+        for (int i = 0; i < 200 * 1000; i++) {
+            ls.add(prefix(random.nextInt()));
+        }
+
+        long start = System.nanoTime();
+        db.replace(descriptor, ls);
+        long replaced = System.nanoTime();
+
+        int lookups = 10 * 1000;
+        int found = 0;
+        List<ThreatListDescriptor> descriptors = Arrays.asList(descriptor, other);
+        for (int i = 0; i < lookups; i++) {
+            byte[] hash = i % 2 == 0 ? ls.get(i) : prefix(random.nextInt());
+            if (db.findMatches(Collections.singletonList(hash), descriptors).containsKey(descriptor)) {
+                found++;
+            }
+        }
+        long looked = System.nanoTime();
+
+        LOGGER.info("{}: replaced {} prefixes in {} ms; {} lookups in {} ms", getClass().getSimpleName(), ls.size(),
+            TimeUnit.NANOSECONDS.toMillis(replaced - start), lookups, TimeUnit.NANOSECONDS.toMillis(looked - replaced));
+        Assert.assertTrue(found >= lookups / 2);
+    }
+
+    private List<byte[]> readCursor(ThreatListDescriptor descriptor) throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        try (PrefixCursor cursor = db.cursor(descriptor)) {
+            while (cursor.next()) {
+                result.add(cursor.current().clone());
+            }
+        }
+        return result;
+    }
+
+    static ThreatListDescriptor makeDescriptor(PlatformType platformType) {
+        ThreatListDescriptor descriptor = new ThreatListDescriptor();
+        descriptor.setThreatType(ThreatType.MALWARE);
+        descriptor.setPlatformType(platformType);
+        descriptor.setThreatEntryType(ThreatEntryType.URL);
+        return descriptor;
+    }
+
+    static byte[] prefix(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+    }
+
+    static byte[] hash(String hex) throws DecoderException {
+        return Hex.decodeHex(hex.toCharArray());
+    }
+
+    static List<String> hex(List<byte[]> hashes) {
+        return hashes.stream().map(Hex::encodeHexString).collect(Collectors.toList());
+    }
+
+}
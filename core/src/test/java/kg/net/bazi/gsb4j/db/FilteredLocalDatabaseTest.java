@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class FilteredLocalDatabaseTest extends AbstractLocalDatabaseTest {
+
+    private Path directory;
+
+    @Override
+    protected LocalDatabase createDatabase() throws IOException {
+        directory = Files.createTempDirectory("filtered-local-db");
+        return new FilteredLocalDatabase(new MappedLocalDatabase(directory), 0.01, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MappedLocalDatabaseTest.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testFilterLoadedFromDatabase() throws Exception {
+        FilteredLocalDatabase fresh = new FilteredLocalDatabase(new MappedLocalDatabase(directory), 0.01, 1024);
+
+        Assert.assertTrue(fresh.contains(prefix(7919), descriptor));
+        Assert.assertFalse(fresh.contains(prefix(7919 + 1), descriptor));
+    }
+
+    @Test
+    public void testUpdatesDoNotLoadLists() throws Exception {
+        MappedLocalDatabase mapped = new MappedLocalDatabase(directory) {
+            @Override
+            public List<byte[]> load(ThreatListDescriptor descriptor) {
+                throw new AssertionError("threat list loaded");
+            }
+        };
+        FilteredLocalDatabase fresh = new FilteredLocalDatabase(mapped, 0.01, 1024 * 1024);
+        Assert.assertTrue(fresh.contains(prefix(7919), descriptor));
+
+        fresh.update(descriptor, Arrays.asList(prefix(7919)), Arrays.asList(prefix(7919 + 1)));
+        Assert.assertTrue(fresh.contains(prefix(7919 + 1), descriptor));
+        Assert.assertFalse(fresh.contains(prefix(7919), descriptor));
+    }
+
+    @Test
+    public void testOverfilledFilter() {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            hashes.add(DigestUtils.sha256("listed" + i));
+        }
+        PrefixFilter filter = PrefixFilter.build(hashes, 0.01, 1024 * 1024);
+        Assert.assertFalse(filter.with(hashes).isOverfilled());
+        Assert.assertTrue(filter.with(hashes).with(hashes).isOverfilled());
+        Assert.assertTrue(PrefixFilter.EMPTY.with(hashes.subList(0, 1)).isOverfilled());
+    }
+
+    @Test
+    public void testStaleCountDoesNotModifyEmptyFilter() throws Exception {
+        List<byte[]> hashes = Arrays.asList(hash("01020304"), hash("05060708"));
+        PrefixFilter filter = PrefixFilter.build(0, PrefixCursor.of(hashes), 0.01, 1024 * 1024);
+
+        Assert.assertNotSame(PrefixFilter.EMPTY, filter);
+        Assert.assertTrue(filter.mightContain(hash("01020304")));
+        Assert.assertFalse(PrefixFilter.EMPTY.mightContain(hash("01020304")));
+        Assert.assertFalse(PrefixFilter.EMPTY.isOverfilled());
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            hashes.add(DigestUtils.sha256("listed" + i));
+        }
+        PrefixFilter filter = PrefixFilter.build(hashes, 0.01, 1024 * 1024);
+        hashes.forEach(h -> Assert.assertTrue(filter.mightContain(h)));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(DigestUtils.sha256("clean" + i))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 2 * 1000);
+    }
+
+    @Test
+    public void testFilterSizeLimit() {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            hashes.add(DigestUtils.sha256("listed" + i));
+        }
+        PrefixFilter filter = PrefixFilter.build(hashes, 0.0001, 16 * 1024);
+        Assert.assertEquals(16 * 1024, filter.sizeInBytes());
+        hashes.forEach(h -> Assert.assertTrue(filter.mightContain(h)));
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.HashSet;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class LocalDatabaseBackendTest {
+
+    @Test
+    public void testBuiltInBackendsDiscovered() {
+        Set<String> names = new HashSet<>();
+        for (LocalDatabaseBackend backend : ServiceLoader.load(LocalDatabaseBackend.class)) {
+            names.add(backend.getName());
+        }
+        Assert.assertTrue(names.contains(SqliteBackend.NAME));
+        Assert.assertTrue(names.contains(MemoryBackend.NAME));
+        Assert.assertTrue(names.contains(MmapBackend.NAME));
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class MappedLocalDatabaseTest extends AbstractLocalDatabaseTest {
+
+    private Path directory;
+
+    @Override
+    protected LocalDatabase createDatabase() throws IOException {
+        directory = Files.createTempDirectory("mapped-local-db");
+        return new MappedLocalDatabase(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        MappedLocalDatabase reopened = new MappedLocalDatabase(directory);
+
+        Assert.assertTrue(reopened.contains(prefix(7919), descriptor));
+        Assert.assertEquals(itemsCount, reopened.load(descriptor).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedFile() throws Exception {
+        Path file = directory.resolve(descriptor + MappedLocalDatabase.FILE_EXTENSION);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(raf.read() ^ 0xff);
+        }
+        new MappedLocalDatabase(directory).contains(hash("00000000"), descriptor);
+    }
+
+    @Test(expected = IOException.class)
+    public void testSectionTableBeyondFile() throws Exception {
+        // section table does not fit into the file while the negative length of the first section brings the data
+        // offset back within the file
+        overwriteInt(8, 1 << 28);
+        overwriteInt(16, Integer.MAX_VALUE);
+        overwriteInt(20, -1);
+        new MappedLocalDatabase(directory).contains(hash("00000000"), descriptor);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNegativePrefixCount() throws Exception {
+        overwriteInt(16, Integer.MAX_VALUE);
+        overwriteInt(20, -1);
+        new MappedLocalDatabase(directory).contains(hash("00000000"), descriptor);
+    }
+
+    private void overwriteInt(long position, int value) throws IOException {
+        Path file = directory.resolve(descriptor + MappedLocalDatabase.FILE_EXTENSION);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            raf.writeInt(value);
+        }
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class MemoryLocalDatabaseTest extends AbstractLocalDatabaseTest {
+
+    static DataSource dataSource;
+    static DataSource readDataSource;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        dataSource = SqlLocalDatabaseTest.makeDataSource("memory-local-db");
+        readDataSource = SqlLocalDatabaseTest.makeReadDataSource(dataSource);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        ((HikariDataSource) readDataSource).close();
+        SqlLocalDatabaseTest.closeDataSource(dataSource);
+    }
+
+    @Override
+    protected LocalDatabase createDatabase() {
+        MemoryLocalDatabase memoryLocalDatabase = new MemoryLocalDatabase();
+        memoryLocalDatabase.delegate = new SqlLocalDatabase();
+        memoryLocalDatabase.delegate.dataSource = dataSource;
+        memoryLocalDatabase.delegate.readDataSource = readDataSource;
+        return memoryLocalDatabase;
+    }
+
+    @Test
+    public void testLookupsDuringReplace() throws Exception {
+        List<byte[]> ls = new ArrayList<>();
+        for (int i = 1; i <= itemsCount; i++) {
+            ls.add(prefix(i * 7919 + 1));
+        }
+        ls.add(prefix(7919));
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger misses = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(executor.submit(() -> {
+                while (!done.get()) {
+                    if (!db.contains(prefix(7919), descriptor)) {
+                        misses.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for (int i = 0; i < 5; i++) {
+                db.replace(descriptor, ls);
+                db.update(descriptor, Arrays.asList(hash("ffffffff")), Arrays.asList(hash("ffffffff")));
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        Assert.assertEquals(0, misses.get());
+    }
+
+    @Test
+    public void testIndexLoadedFromDatabase() throws Exception {
+        MemoryLocalDatabase fresh = new MemoryLocalDatabase();
+        fresh.delegate = ((MemoryLocalDatabase) db).delegate;
+
+        Assert.assertTrue(fresh.contains(prefix(7919), descriptor));
+        Assert.assertFalse(fresh.contains(prefix(7919 + 1), descriptor));
+    }
+
+    @Test
+    public void testIndexLoadedFromDatabaseWithLongPrefixes() throws Exception {
+        db.update(descriptor, Collections.emptyList(), Arrays.asList(hash("0102030405"), hash("00000000ff")));
+        MemoryLocalDatabase fresh = new MemoryLocalDatabase();
+        fresh.delegate = ((MemoryLocalDatabase) db).delegate;
+        fresh.storage = ((MemoryLocalDatabase) db).storage;
+
+        Assert.assertTrue(fresh.contains(hash("0102030405"), descriptor));
+        Assert.assertTrue(fresh.contains(hash("00000000ff"), descriptor));
+        Assert.assertTrue(fresh.contains(prefix(itemsCount * 7919), descriptor));
+        Assert.assertFalse(fresh.contains(hash("0102030406"), descriptor));
+        Assert.assertEquals(itemsCount + 2, fresh.load(descriptor).size());
+    }
+
+    @Test
+    public void testStorageKeptAfterClear() throws Exception {
+        MemoryLocalDatabase memoryLocalDatabase = (MemoryLocalDatabase) db;
+
+        db.clear(descriptor);
+        db.persist(descriptor, Arrays.asList(prefix(1), prefix(2)));
+        Assert.assertEquals(memoryLocalDatabase.storage, memoryLocalDatabase.getIndex(descriptor).storage());
+
+        db.clear(descriptor);
+        db.update(descriptor, Collections.emptyList(), Arrays.asList(prefix(3), prefix(4)));
+        Assert.assertEquals(memoryLocalDatabase.storage, memoryLocalDatabase.getIndex(descriptor).storage());
+        Assert.assertTrue(db.contains(prefix(3), descriptor));
+    }
+
+}
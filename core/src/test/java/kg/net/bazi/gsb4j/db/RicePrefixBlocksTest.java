@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.db;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author azilet
+ */
+public class RicePrefixBlocksTest {
+
+    @Test
+    public void testRoundTrip() {
+        for (int size : new int[]{0, 1, 63, 64, 65, 1000}) {
+            int[] values = randomValues(size, new Random(size));
+            Assert.assertArrayEquals(values, RicePrefixBlocks.encode(values).toArray());
+        }
+    }
+
+    @Test
+    public void testExtremeValues() {
+        int[] values = {Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0, 1, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+        RicePrefixBlocks blocks = RicePrefixBlocks.encode(values);
+        Assert.assertArrayEquals(values, blocks.toArray());
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(i, blocks.search(values[i], 0));
+        }
+        Assert.assertEquals(-3, blocks.search(-2, 0));
+    }
+
+    @Test
+    public void testSearchSameAsBinarySearch() {
+        Random random = new Random(42);
+        int[] values = randomValues(10000, random);
+        RicePrefixBlocks blocks = RicePrefixBlocks.encode(values);
+        for (int i = 0; i < 10000; i++) {
+            int key = i % 2 == 0 ? values[random.nextInt(values.length)] : random.nextInt();
+            Assert.assertEquals(Arrays.binarySearch(values, key), blocks.search(key, 0));
+        }
+    }
+
+    @Test
+    public void testSearchFromIndex() {
+        Random random = new Random(7);
+        int[] values = randomValues(5000, random);
+        RicePrefixBlocks blocks = RicePrefixBlocks.encode(values);
+
+        int[] keys = randomValues(2000, random);
+        for (int i = 0; i < keys.length; i += 3) {
+            keys[i] = values[random.nextInt(values.length)];
+        }
+        Arrays.sort(keys);
+        int from = 0;
+        for (int key : keys) {
+            int expected = Arrays.binarySearch(values, from, values.length, key);
+            int pos = blocks.search(key, from);
+            Assert.assertEquals(expected, pos);
+            from = pos >= 0 ? pos : -(pos + 1);
+        }
+    }
+
+    @Test
+    public void testSizeOfUniformPrefixes() {
+        int[] values = randomValues(1000000, new Random(1));
+        RicePrefixBlocks blocks = RicePrefixBlocks.encode(values);
+        double bytesPerPrefix = (double) blocks.sizeInBytes() / blocks.size();
+        Assert.assertTrue("Bytes per prefix: " + bytesPerPrefix, bytesPerPrefix < 2.2);
+    }
+
+    @Test
+    public void testSkewedValues() {
+        // dense run followed by a huge gap and another dense run in the same block
+        int[] values = new int[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < 50 ? Integer.MIN_VALUE + i : Integer.MAX_VALUE - 100 + i;
+        }
+        RicePrefixBlocks blocks = RicePrefixBlocks.encode(values);
+        Assert.assertArrayEquals(values, blocks.toArray());
+        Assert.assertEquals(50, blocks.search(Integer.MAX_VALUE - 50, 0));
+    }
+
+    private static int[] randomValues(int size, Random random) {
+        return random.ints(size * 2L).distinct().limit(size).sorted().toArray();
+    }
+
+}
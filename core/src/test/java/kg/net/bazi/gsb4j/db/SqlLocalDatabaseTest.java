@@ -19,122 +19,163 @@ package kg.net.bazi.gsb4j.db;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
 
 import javax.sql.DataSource;
 
 import kg.net.bazi.gsb4j.data.PlatformType;
-import kg.net.bazi.gsb4j.data.ThreatEntryType;
 import kg.net.bazi.gsb4j.data.ThreatListDescriptor;
-import kg.net.bazi.gsb4j.data.ThreatType;
-import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Assert;
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.sqlite.JDBC;
+import org.sqlite.SQLiteConfig;
 
 /**
  *
  * @author azilet
  */
-public class SqlLocalDatabaseTest {
+public class SqlLocalDatabaseTest extends AbstractLocalDatabaseTest {
 
     static DataSource dataSource;
-
-    private SqlLocalDatabase db = new SqlLocalDatabase();
-    private int itemsCount = 123456;
-    private ThreatListDescriptor descriptor;
+    static DataSource readDataSource;
 
     @BeforeClass
     public static void setUpClass() throws Exception {
-        Path path = Files.createTempFile("sql-local-db", ".db");
-
-        HikariConfig config = new HikariConfig();
-        config.setPoolName("GsbTestDbPool");
-        config.setAutoCommit(false);
-        config.setJdbcUrl(JDBC.PREFIX + path.toString());
-        config.setMinimumIdle(2);
-        config.setMaximumPoolSize(10);
-
-        dataSource = new HikariDataSource(config);
+        dataSource = makeDataSource("sql-local-db");
+        readDataSource = makeReadDataSource(dataSource);
     }
 
     @AfterClass
     public static void tearDownClass() throws Exception {
-        if (dataSource instanceof HikariDataSource) {
-            HikariDataSource ds = (HikariDataSource) dataSource;
-            Files.delete(Paths.get(ds.getJdbcUrl().substring(JDBC.PREFIX.length())));
-        }
+        ((HikariDataSource) readDataSource).close();
+        closeDataSource(dataSource);
     }
 
-    @Before
-    public void setUp() throws IOException {
-        descriptor = new ThreatListDescriptor();
-        descriptor.setThreatType(ThreatType.MALWARE);
-        descriptor.setPlatformType(PlatformType.LINUX);
-        descriptor.setThreatEntryType(ThreatEntryType.URL);
+    @Override
+    protected LocalDatabase createDatabase() {
+        SqlLocalDatabase sqlLocalDatabase = new SqlLocalDatabase();
+        sqlLocalDatabase.dataSource = dataSource;
+        sqlLocalDatabase.readDataSource = readDataSource;
+        return sqlLocalDatabase;
+    }
 
-        List<String> ls = new ArrayList<>();
-        for (int i = 1; i <= itemsCount; i++) {
-            ls.add(String.valueOf(i));
+    @Test(expected = SQLException.class)
+    public void testReadDataSourceIsQueryOnly() throws Exception {
+        try (Connection conn = readDataSource.getConnection();
+            Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM " + descriptor);
         }
-
-        db.dataSource = dataSource;
-        db.persist(descriptor, ls);
     }
 
-    @After
-    public void tearDown() throws IOException {
-        db.clear(descriptor);
+    @Test
+    public void testReadsDoNotWaitForWrites() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+            Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM " + descriptor);
+            // write transaction is still open; lookups see the last committed version
+            Assert.assertTrue(db.contains(prefix(7919), descriptor));
+            Assert.assertEquals(itemsCount, db.load(descriptor).size());
+            conn.rollback();
+        }
     }
 
     @Test
-    public void testLoad() throws Exception {
-        List<String> ls = db.load(descriptor);
-        Assert.assertEquals(itemsCount, ls.size());
-        Assert.assertTrue(ls.contains("1"));
-        Assert.assertTrue(ls.contains("2"));
+    public void testLookupsDoNotCreateTables() throws Exception {
+        SqlLocalDatabase fresh = (SqlLocalDatabase) createDatabase();
+        ThreatListDescriptor unknown = makeDescriptor(PlatformType.CHROME);
+        try (Connection conn = dataSource.getConnection();
+            Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM " + descriptor);
+            // write transaction is still open; lookups of a list without a table shall not wait for it
+            Assert.assertFalse(fresh.contains(prefix(7919), unknown));
+            Assert.assertTrue(fresh.load(unknown).isEmpty());
+            Assert.assertTrue(fresh.findMatches(Arrays.asList(prefix(7919)), Arrays.asList(unknown)).isEmpty());
+            try (PrefixCursor cursor = fresh.cursor(unknown)) {
+                Assert.assertFalse(cursor.next());
+            }
+            conn.rollback();
+        }
+        Assert.assertTrue(fresh.contains(prefix(7919), descriptor));
     }
 
     @Test
-    public void testPersist() throws Exception {
-        List<String> newValues = new ArrayList<>();
-        newValues.add("abc");
-        newValues.add("def");
-        db.persist(descriptor, newValues);
-
-        List<String> ls = db.load(descriptor);
-        Assert.assertEquals(itemsCount + 2, ls.size());
-        Assert.assertTrue(ls.contains("abc"));
-        Assert.assertTrue(ls.contains("def"));
-        Assert.assertTrue(ls.contains("1"));
-        Assert.assertTrue(ls.contains("2"));
+    public void testReplaceDropsStagingTable() throws Exception {
+        db.replace(descriptor, Arrays.asList(hash("0abc0000"), prefix(2)));
+
+        try (Connection conn = dataSource.getConnection();
+            Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE name LIKE '%"
+                + SqlLocalDatabase.STAGING_SUFFIX + "'")) {
+            Assert.assertFalse(rs.next());
+        }
     }
 
     @Test
-    public void testContains() throws Exception {
-        Assert.assertTrue(db.contains("1", descriptor));
-        Assert.assertTrue(db.contains("2", descriptor));
-        Assert.assertTrue(db.contains("3", descriptor));
-        Assert.assertTrue(db.contains("4", descriptor));
-
-        Assert.assertFalse(db.contains(String.valueOf(itemsCount + 1), descriptor));
-        Assert.assertFalse(db.contains(String.valueOf(itemsCount + 2), descriptor));
+    public void testSchemaMigration() throws Exception {
+        ThreatListDescriptor old = makeDescriptor(PlatformType.ANY_PLATFORM);
+        try (Connection conn = dataSource.getConnection();
+            Statement st = conn.createStatement()) {
+            st.execute("PRAGMA user_version = 0");
+            st.execute("CREATE TABLE " + old + " (prefix TEXT CONSTRAINT pk PRIMARY KEY ASC ON CONFLICT REPLACE)");
+            st.execute("INSERT INTO " + old + " VALUES ('00000001'), ('0abc0000'), ('ffffffff00')");
+            conn.commit();
+        }
+
+        SqlSchemaMigration.migrate(dataSource);
+
+        try (Connection conn = dataSource.getConnection()) {
+            Assert.assertEquals(SqlSchemaMigration.SCHEMA_VERSION, SqlSchemaMigration.getSchemaVersion(conn));
+        }
+        Assert.assertEquals(Arrays.asList("00000001", "0abc0000", "ffffffff00"), hex(db.load(old)));
+        Assert.assertTrue(db.contains(hash("0abc0000"), old));
+        Assert.assertEquals(itemsCount, db.load(descriptor).size());
+        db.clear(old);
     }
 
-    @Test
-    public void testClear() throws Exception {
-        db.clear(descriptor);
+    static DataSource makeDataSource(String name) throws Exception {
+        Path path = Files.createTempFile(name, ".db");
+
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("GsbTestDbPool");
+        config.setAutoCommit(false);
+        config.setJdbcUrl(JDBC.PREFIX + path.toString());
+        config.setDataSourceProperties(sqliteConfig.toProperties());
+        config.setMinimumIdle(2);
+        config.setMaximumPoolSize(10);
+
+        return new HikariDataSource(config);
+    }
+
+    static DataSource makeReadDataSource(DataSource dataSource) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("GsbTestReadDbPool");
+        config.setAutoCommit(true);
+        config.setJdbcUrl(((HikariDataSource) dataSource).getJdbcUrl());
+        config.setConnectionInitSql("PRAGMA query_only = 1");
+        config.setMinimumIdle(2);
+        config.setMaximumPoolSize(10);
 
-        List<String> ls = db.load(descriptor);
-        Assert.assertTrue(ls.isEmpty());
+        return new HikariDataSource(config);
+    }
+
+    static void closeDataSource(DataSource dataSource) throws Exception {
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource ds = (HikariDataSource) dataSource;
+            ds.close();
+            Files.delete(Paths.get(ds.getJdbcUrl().substring(JDBC.PREFIX.length())));
+        }
     }
 
 }
@@ -16,6 +16,8 @@
 
 package kg.net.bazi.gsb4j.url;
 
+import java.util.Arrays;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -50,6 +52,15 @@ public class HashingTest {
         Assert.assertEquals("ba7816bf", prefix);
     }
 
+    @Test
+    public void testComputeRawHash() {
+        byte[] hash = hashing.computeRawHash("abc");
+        Assert.assertEquals(32, hash.length);
+        Assert.assertArrayEquals(new byte[]{(byte) 0xba, 0x78, 0x16, (byte) 0xbf}, Arrays.copyOf(hash, 4));
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            hashing.computeFullHash("abc"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testComputeHashPrefixWithInvalidParam1() {
         hashing.computeHashPrefix("abc", 0);
@@ -16,12 +16,12 @@
 
 package kg.net.bazi.gsb4j.util;
 
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
+import java.util.BitSet;
+import java.util.Random;
 
-import org.junit.After;
 import org.junit.Assert;
-import org.junit.Before;
 import org.junit.Test;
 
 /**
@@ -36,28 +36,80 @@ public class RiceCompressionTest {
     private String data2 = "iUJVA4vFTpeP8rO/Z4t+YRgR5F3FJKVLdSLxOg24kVRFftBPF7Md9CpFGz+YS+/gG3UlrTEQJ7VH8ykklhUFbDzVxjlVMXb0Tv3gHwPeFjunnO5LaOo+zvqvUgsbTBNfRSQRG0k403QOLD1GzWYOxTU16XZspky9e5IEZ1CRO4dxmVIqqxoZgLwXH7hohhYa/0IroGzN7+sIYlm+v6Qpx1/yrU/E/2skm+A37Df0KAuOyK68KTvo1Wxi6kvCPTOCBPqXzqrTxzk0LEoyAmJP8E0TEjhk3xYWLyLlRZC05ZIcGb4xOsQ8hmVLArZwA5n8CtWCYFmbXLFDwclzNAGMvsxh4maJ6u1V4aM7Ur956K9vle/a2pK58CT0txNqfx2cwsp25wKYqWP1fKc7bHEbU+OF/msNDnZo02aDrGcdm6zU1W4n9IMXLtylDMSEPfTm5ujzK9VlL7jWmdg9+w4AgD99waUJfVQILu60hp13mf5byg4wkS9RC6AtyuJ7zBlUTqHmHBfaeqgqrVbCE4XV+ZlVfcRb7qi8rIhqjKLlplTONcQU9ECB78Gse2rgDs2S4bUdx+8nH/xKORJnKbCcaWJ9Yzw/FWesIkaQnCICXGGkuLgtri1EI3p0tbnbKHlby+XRk18vxPar5U+5CpH+veXFbPvQr4UfJ8uyOSfrF7BgRUdy5hN0ZPZGq+6j/MxHqa0GMSwM5s7azJyMQQkxQdVg30SJs8bgky119oKg6+dpCuw2W+ZKcYIW0IcwG2NIepGgLxbDcYupoqsoBVfTohJYP1SolAwa9RsEuTB0Nir2Lngkq4zD0E76gWlEHiLL9z8XBZUoPzcAa8nA+nYCdrY2LQ5z8/z71rLS0KSGQ3qmpPZRGTNlEJTRVGpjoDdhlykSV06doAltkVWPy1K1ndvHZnxFFvqo+crfvm3PZW8g2lWpXhjJt+oVbq/aZWKR4klkh5MLDtTcwyvMeu56/AkaMmiSoXGlXF8/nJErbDPJl5XXY4WP3+IHPYdHqzGXC+88iAjEhtE4anSKYyWhYW9mRBaSfmxi+HVsQNycrU6YuKwqSPGdDa2KDQpI95QsL1G0SkCRJKjE3nCL+cyWDZJi4FhQphiHohFwtAj7pSYn95RhLJVeT5hIwKJMlOuoMRtmQwjfJ3n2m+xwRkmT7/UOjdUSntwRRBmuURHmQuq1ds3sw2clShw40xNH/Gqw9DSmix6d4NzENJ6dLwaBln3AzUTI5BSINcEBwo/pWk8QhN9X1ZhRlVHzHb901vixxJOM5DL5tLZKROBhKcAVl1lvxbrhEZ5PLsbQCwg/EyTjQ7ONRw9sIt2tYfMm2NNTCGx8G7dReZmAidjleWUkAwXA/Xuq1QZB7C0zrCvmtNZCyL+aHCQw7as5taE3";
     private int parameter = 23;
 
-    @Before
-    public void setUp() {
+    @Test
+    public void testDecode() {
+        // deltas 5 and 2 with parameter 2: 10 01 0 then 0 01, least significant bits first
+        int[] values = riceCompression.decode(10, 2, 2, new byte[]{0x45});
+        Assert.assertArrayEquals(new int[]{10, 15, 17}, values);
+    }
+
+    @Test
+    public void testDecodeFirstValueOnly() {
+        Assert.assertArrayEquals(new int[]{42}, riceCompression.decode(42, 5, 0, new byte[0]));
+    }
+
+    @Test
+    public void testDecodeUnsignedValues() {
+        int[] deltas = {1, 0x7fffffff, 3};
+        int[] values = riceCompression.decode(0x7ffffff0, 28, deltas.length, encode(28, deltas));
+        Assert.assertArrayEquals(new int[]{0x7ffffff0, 0x7ffffff1, 0xfffffff0, 0xfffffff3}, values);
+    }
+
+    @Test
+    public void testDecodeEncoded() {
+        Random random = new Random(3);
+        for (int parameter : new int[]{0, 2, 13, 28}) {
+            int[] deltas = new int[1000];
+            for (int i = 0; i < deltas.length; i++) {
+                deltas[i] = random.nextInt(4 << parameter);
+            }
+            int[] values = riceCompression.decode(7, parameter, deltas.length, encode(parameter, deltas));
+            Assert.assertEquals(deltas.length + 1, values.length);
+            int expected = 7;
+            for (int i = 0; i < deltas.length; i++) {
+                expected += deltas[i];
+                Assert.assertEquals(expected, values[i + 1]);
+            }
+        }
     }
 
-    @After
-    public void tearDown() {
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeTruncated() {
+        riceCompression.decode(0, 2, 3, new byte[]{0x45});
     }
 
     @Test
-    public void testDecompress1() {
+    public void testDecode1() {
         byte[] bytes = Base64.getDecoder().decode(data1);
-        List<Integer> ls = riceCompression.decompress(parameter, bytes);
+        int[] values = riceCompression.decode(0, parameter, 336, bytes);
 
-        Assert.assertEquals(336, ls.size());
+        Assert.assertEquals(337, values.length);
     }
 
     @Test
-    public void testDecompress2() {
+    public void testDecode2() {
         byte[] bytes = Base64.getDecoder().decode(data2);
-        List<Integer> ls = riceCompression.decompress(parameter, bytes);
+        int[] values = riceCompression.decode(0, parameter, 336, bytes);
+
+        Assert.assertEquals(337, values.length);
+    }
 
-        Assert.assertEquals(336, ls.size());
+    /**
+     * Straightforward bit by bit encoder to test decoder against.
+     */
+    private static byte[] encode(int parameter, int[] deltas) {
+        BitSet bits = new BitSet();
+        int n = 0;
+        for (int delta : deltas) {
+            for (long q = Integer.toUnsignedLong(delta) >>> parameter; q > 0; q--) {
+                bits.set(n++);
+            }
+            n++;
+            for (int i = 0; i < parameter; i++) {
+                bits.set(n++, (delta >>> i & 1) != 0);
+            }
+        }
+        return Arrays.copyOf(bits.toByteArray(), (n + 7) / 8);
     }
 
 }
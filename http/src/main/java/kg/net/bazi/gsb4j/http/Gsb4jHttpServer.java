@@ -19,6 +19,9 @@ package kg.net.bazi.gsb4j.http;
 import com.google.inject.Injector;
 import com.google.inject.servlet.GuiceFilter;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.EnumSet;
 
@@ -46,7 +49,8 @@ public class Gsb4jHttpServer {
 
     /**
      * Main method of Gsb4j HTTP module. Bootstraps DI and starts Jetty server. The port for the server can be supplied
-     * by system property "http.port" (defaults to 8080).
+     * by system property "http.port" (defaults to 8080). If system property "snapshot.import" names an existing
+     * snapshot file, threat lists are imported from it before the server starts.
      *
      * @param args arguments not used
      * @throws InterruptedException when web server thread is interrupted
@@ -56,6 +60,7 @@ public class Gsb4jHttpServer {
         Server server;
         try {
             Gsb4j gsb4j = Gsb4j.bootstrap();
+            importSnapshot(gsb4j);
             Injector injector = bootstrapDependencyInjector(gsb4j);
 
             server = initServer(port, injector);
@@ -70,6 +75,13 @@ public class Gsb4jHttpServer {
         server.join();
     }
 
+    private static void importSnapshot(Gsb4j gsb4j) throws IOException {
+        String snapshot = System.getProperty("snapshot.import");
+        if (snapshot != null && Files.exists(Paths.get(snapshot))) {
+            gsb4j.importSnapshot(Paths.get(snapshot));
+        }
+    }
+
     private static Injector bootstrapDependencyInjector(Gsb4j gsb4j) {
         Injector injector = gsb4j.getInjector();
         return injector.createChildInjector(Arrays.asList(new Gsb4jServletModule()));
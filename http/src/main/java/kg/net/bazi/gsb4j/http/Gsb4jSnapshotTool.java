@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Azilet B.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kg.net.bazi.gsb4j.http;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import kg.net.bazi.gsb4j.Gsb4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command line tool to export and import snapshots of threat lists. Configuration is supplied by system properties
+ * the same way as for {@link Gsb4jHttpServer}.
+ * <p>
+ * Usage: {@code Gsb4jSnapshotTool export|import <file>}
+ *
+ * @author bazi
+ */
+public class Gsb4jSnapshotTool {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    /**
+     * Main method of the tool. Exits with non-zero status on failure.
+     *
+     * @param args command ("export" or "import") and path of the snapshot file
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 || !("export".equals(args[0]) || "import".equals(args[0]))) {
+            System.err.println("Usage: Gsb4jSnapshotTool export|import <file>");
+            System.exit(2);
+            return;
+        }
+        Path path = Paths.get(args[1]);
+        int status = 0;
+        Gsb4j gsb4j = Gsb4j.bootstrap();
+        try {
+            int count = "export".equals(args[0]) ? gsb4j.exportSnapshot(path) : gsb4j.importSnapshot(path);
+            LOGGER.info("Snapshot {}: {} threat lists", args[0], count);
+        } catch (Exception ex) {
+            LOGGER.error("Failed to {} snapshot {}", args[0], path, ex);
+            status = 1;
+        } finally {
+            gsb4j.shutdown();
+        }
+        // scheduled list update would otherwise keep JVM running
+        System.exit(status);
+    }
+
+}